@@ -0,0 +1,74 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * The ambient frame, rendered once a minute into an alpha mask and blitted in white on black.
+ * With burn-in protection the blit is moved around a few pixels every minute instead of
+ * drawing the frame again.
+ */
+class AmbientFrame {
+
+    /* Offsets cycled through once a minute, in pixels. */
+    private static final int[] SHIFT_X = {0, 4, 4, 0, -4, -4, -4, 0, 4};
+    private static final int[] SHIFT_Y = {0, 0, 4, 4, 4, 0, -4, -4, -4};
+
+    private final Paint paint = new Paint();
+
+    private Bitmap mask;
+    private Canvas canvas;
+    private long minute = Long.MIN_VALUE;
+    private boolean burnInProtection;
+
+    AmbientFrame() {
+        paint.setColor(Color.WHITE);
+    }
+
+    void setSize(int width, int height) {
+        BitmapPool.getInstance().release(mask);
+        mask = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ALPHA_8);
+        canvas = new Canvas(mask);
+        invalidate();
+    }
+
+    void release() {
+        BitmapPool.getInstance().release(mask);
+        mask = null;
+        canvas = null;
+    }
+
+    void setBurnInProtection(boolean burnInProtection) {
+        this.burnInProtection = burnInProtection;
+    }
+
+    void invalidate() {
+        minute = Long.MIN_VALUE;
+    }
+
+    boolean isReady() {
+        return mask != null;
+    }
+
+    /**
+     * Returns a cleared canvas to draw the frame for the given minute into, or null if the
+     * frame for it is already drawn. Whatever is drawn only keeps its alpha.
+     */
+    Canvas begin(long minute) {
+        if (minute == this.minute)
+            return null;
+
+        this.minute = minute;
+        mask.eraseColor(Color.TRANSPARENT);
+        return canvas;
+    }
+
+    void draw(Canvas canvas) {
+        int shift = burnInProtection ? (int) Math.floorMod(minute, (long) SHIFT_X.length) : 0;
+
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(mask, SHIFT_X[shift], SHIFT_Y[shift], paint);
+    }
+}
@@ -0,0 +1,98 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Ready made paths for the arcs around the edge of the face, so drawing one is a single
+ * {@link android.graphics.Canvas#drawPath} without touching the matrix stack. The seconds arc
+ * is centered on 3 o'clock; other arcs along the same edge are built into the caller's path.
+ */
+class ArcPaths {
+
+    static final float DEGREES_PER_SECOND = 6f;
+
+    /* Seconds arcs by sweep, 0 to 360 degrees in steps of one second. */
+    private final Path[] secondPaths = new Path[61];
+    private final RectF oval = new RectF();
+    private final RectF arcBounds = new RectF();
+    /* Seconds arc of any sweep, for the smooth sweep. */
+    private final Path sweepPath = new Path();
+
+    ArcPaths() {
+        for (int i = 0; i < secondPaths.length; i++)
+            secondPaths[i] = new Path();
+    }
+
+    /**
+     * Rebuilds the paths for a surface of the given size, insetting the arcs by half their
+     * stroke width.
+     */
+    void setSize(int width, int height, float inset) {
+        oval.set(inset, inset, width - inset, height - inset);
+
+        for (int i = 0; i < secondPaths.length; i++) {
+            float sweep = i * DEGREES_PER_SECOND;
+            secondPaths[i].rewind();
+            if (i > 0)
+                secondPaths[i].addArc(oval, -.5f * sweep, sweep);
+        }
+    }
+
+    /**
+     * The seconds arc, growing with the seconds or, when reversed, shrinking.
+     */
+    Path getSecondsPath(int second, boolean reversed) {
+        return secondPaths[reversed ? 60 - second : second];
+    }
+
+    /**
+     * The seconds arc at a fraction of a second. Rebuilt on every call.
+     */
+    Path getSecondsPath(float seconds, boolean reversed) {
+        float sweep = (reversed ? 60 - seconds : seconds) * DEGREES_PER_SECOND;
+        sweepPath.rewind();
+        if (sweep > 0)
+            sweepPath.addArc(oval, -.5f * sweep, sweep);
+        return sweepPath;
+    }
+
+    /**
+     * Adds the bounds of an arc along the edge, drawn with a stroke reaching {@code padding} off
+     * the edge, to {@code out}. Angles are in degrees clockwise from 3 o'clock.
+     */
+    void unionArcBounds(float startAngle, float sweep, float padding, Rect out) {
+        if (sweep <= 0)
+            return;
+        float endAngle = startAngle + sweep;
+        addArcPoint(startAngle, true);
+        addArcPoint(endAngle, false);
+        /* The arc reaches furthest out where it crosses an axis. */
+        for (float angle = (float) Math.ceil(startAngle / 90) * 90; angle < endAngle; angle += 90)
+            addArcPoint(angle, false);
+
+        out.union((int) Math.floor(arcBounds.left - padding), (int) Math.floor(arcBounds.top - padding),
+                (int) Math.ceil(arcBounds.right + padding), (int) Math.ceil(arcBounds.bottom + padding));
+    }
+
+    private void addArcPoint(float angle, boolean first) {
+        double radians = Math.toRadians(angle);
+        float x = oval.centerX() + oval.width() * .5f * (float) Math.cos(radians);
+        float y = oval.centerY() + oval.height() * .5f * (float) Math.sin(radians);
+        if (first)
+            arcBounds.set(x, y, x, y);
+        else
+            arcBounds.union(x, y);
+    }
+
+    /**
+     * Replaces the path with an arc along the edge, centered on {@code centerAngle} degrees
+     * clockwise from 3 o'clock, for a sweep between 0 and 360 degrees.
+     */
+    void buildArc(Path path, float centerAngle, float sweep) {
+        path.rewind();
+        if (sweep > 0)
+            path.addArc(oval, centerAngle - .5f * sweep, sweep);
+    }
+}
@@ -0,0 +1,36 @@
+package pt.jonny4547.customwatchface;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The process wide thread for decoding and file work. It runs at background priority so it never
+ * competes with drawing, and tasks run one at a time in submission order.
+ */
+final class BackgroundExecutor {
+
+    private static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "Watch Face Background");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static ExecutorService get() {
+        return INSTANCE;
+    }
+
+    private BackgroundExecutor() {
+    }
+}
@@ -0,0 +1,139 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ImageDecoder;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Loads complication images on a background thread, scaled to the size they'll be drawn at,
+ * and delivers them on the thread of the given {@link Handler}. Only the most recent request
+ * is ever delivered. Images that can be identified are shared through the {@link ImageCache};
+ * delivered bitmaps should be released to it once replaced and never drawn into.
+ */
+class BackgroundImageLoader {
+
+    private static final String TAG = "Background Image Loader";
+
+    interface Callback {
+        void onImageLoaded(Bitmap image);
+    }
+
+    private final Context context;
+    private final Handler handler;
+    private final Callback callback;
+
+    /* Only touched from the handler thread. */
+    private Future<?> pending;
+    private int generation;
+
+    BackgroundImageLoader(Context context, Handler handler, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.handler = handler;
+        this.callback = callback;
+    }
+
+    /**
+     * Loads the icon into a bitmap of the given size. The image keeps its aspect ratio, filling
+     * the height and centered horizontally.
+     */
+    void load(final Icon icon, final int width, final int height) {
+        cancel();
+        final int requestGeneration = generation;
+
+        pending = BackgroundExecutor.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                String key = ImageCache.getKey(icon, width, height);
+                Bitmap cached = key == null ? null : ImageCache.getInstance().acquire(key);
+                if (cached != null) {
+                    deliver(cached, requestGeneration);
+                    return;
+                }
+
+                Drawable drawable = loadDrawable(icon, height);
+                if (drawable == null || Thread.currentThread().isInterrupted())
+                    return;
+
+                Bitmap image = render(drawable, width, height);
+                if (key != null)
+                    image = ImageCache.getInstance().put(key, image);
+                deliver(image, requestGeneration);
+            }
+        });
+    }
+
+    private void deliver(final Bitmap image, final int requestGeneration) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation) {
+                    ImageCache.getInstance().release(image);
+                    return;
+                }
+                pending = null;
+                callback.onImageLoaded(image);
+            }
+        });
+    }
+
+    private Drawable loadDrawable(Icon icon, final int height) {
+        /* Decode uri images straight to the target size instead of at full resolution. */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && icon.getType() == Icon.TYPE_URI) {
+            try {
+                ImageDecoder.Source source = ImageDecoder.createSource(context.getContentResolver(), icon.getUri());
+                return ImageDecoder.decodeDrawable(source, new ImageDecoder.OnHeaderDecodedListener() {
+                    @Override
+                    public void onHeaderDecoded(ImageDecoder decoder, ImageDecoder.ImageInfo info, ImageDecoder.Source source) {
+                        int imageHeight = info.getSize().getHeight();
+                        if (imageHeight > height) {
+                            int imageWidth = info.getSize().getWidth();
+                            decoder.setTargetSize(Math.max(1, imageWidth * height / imageHeight), height);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to decode " + icon.getUri(), e);
+            }
+        }
+
+        return icon.loadDrawable(context);
+    }
+
+    /**
+     * Draws the image into a pooled bitmap of the given size, filling the height and centered
+     * horizontally.
+     */
+    static Bitmap render(Drawable drawable, int width, int height) {
+        int imageWidth = drawable.getIntrinsicWidth();
+        int imageHeight = drawable.getIntrinsicHeight();
+        float ar = imageWidth <= 0 || imageHeight <= 0 || imageWidth == imageHeight ? 1 : (float) imageWidth / imageHeight;
+        float centerX = width / 2f;
+        float newCX = centerX * ar;
+        int left = (int) (centerX - newCX);
+        drawable.setBounds(left, 0, left + (int) (newCX * 2), height);
+
+        Bitmap image = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+        drawable.draw(new Canvas(image));
+        return image;
+    }
+
+    /**
+     * Cancels the pending request, if any. Its result will never be delivered.
+     */
+    void cancel() {
+        generation++;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+}
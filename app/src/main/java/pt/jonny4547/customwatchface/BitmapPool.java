@@ -0,0 +1,83 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small process wide pool of mutable bitmaps, so surface sized bitmaps that get replaced
+ * often can be reused instead of reallocated. The pool never holds more than
+ * {@link #MAX_SIZE_BYTES}; anything that doesn't fit is recycled.
+ */
+class BitmapPool {
+
+    private static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private static final BitmapPool INSTANCE = new BitmapPool();
+
+    private final List<Bitmap> bitmaps = new ArrayList<>();
+    private int sizeBytes;
+
+    static BitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    private BitmapPool() {
+    }
+
+    /**
+     * Returns a cleared, mutable bitmap of the given size, reusing a pooled one if possible.
+     */
+    Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap == null)
+            return Bitmap.createBitmap(width, height, config);
+
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        for (int i = bitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = bitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                bitmaps.remove(i);
+                sizeBytes -= bitmap.getAllocationByteCount();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands a bitmap back to the pool. The caller must not use it afterwards.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled())
+            return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > MAX_SIZE_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+
+        /* Make room by dropping the oldest bitmaps. */
+        while (sizeBytes + size > MAX_SIZE_BYTES) {
+            Bitmap oldest = bitmaps.remove(0);
+            sizeBytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+        }
+
+        bitmaps.add(bitmap);
+        sizeBytes += size;
+    }
+
+    synchronized void clear() {
+        for (Bitmap bitmap : bitmaps)
+            bitmap.recycle();
+        bitmaps.clear();
+        sizeBytes = 0;
+    }
+}
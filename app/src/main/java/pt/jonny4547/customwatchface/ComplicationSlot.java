@@ -0,0 +1,75 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.RectF;
+import android.support.wearable.complications.ComplicationData;
+
+/**
+ * The complication slots of the face. Each slot declares everything about itself in one place:
+ * its id, the data types it takes, how and where it's drawn, and where its button goes on the
+ * config screen. Ids are indices into {@link #getAll()}, so finding a slot is an array access.
+ * Adding a slot is adding a line here.
+ */
+final class ComplicationSlot {
+
+    /* The image behind the face. Only one slot can be the background. */
+    static final int KIND_BACKGROUND = 0;
+    /* An arc along the edge, centered on the direction of the bounds' center. */
+    static final int KIND_RANGE = 1;
+    /* A title on the top edge of the bounds and a text on the bottom edge, centered. */
+    static final int KIND_TEXT = 2;
+
+    private static final ComplicationSlot[] SLOTS = {
+            new ComplicationSlot(0, KIND_BACKGROUND,
+                    new int[] {ComplicationData.TYPE_LARGE_IMAGE},
+                    new RectF(0, 0, 1, 1), .15f, .5f),
+            new ComplicationSlot(1, KIND_RANGE,
+                    new int[] {ComplicationData.TYPE_RANGED_VALUE},
+                    new RectF(0, .5f, 1, 1), .85f, .5f),
+            new ComplicationSlot(2, KIND_TEXT,
+                    new int[] {ComplicationData.TYPE_SHORT_TEXT, ComplicationData.TYPE_LONG_TEXT},
+                    new RectF(0, .40f, 1, .675f), .5f, .5f),
+    };
+
+    private static final int[] IDS = new int[SLOTS.length];
+
+    static {
+        for (int i = 0; i < SLOTS.length; i++) {
+            if (SLOTS[i].id != i)
+                throw new IllegalStateException("Slot " + SLOTS[i].id + " declared at index " + i);
+            IDS[i] = i;
+        }
+    }
+
+    final int id;
+    final int kind;
+    final int[] supportedTypes;
+    /* In fractions of the face's size. */
+    final RectF bounds;
+    /* Center of the slot's button on the config screen, in fractions of the screen's size. */
+    final float buttonX;
+    final float buttonY;
+
+    private ComplicationSlot(int id, int kind, int[] supportedTypes, RectF bounds, float buttonX, float buttonY) {
+        this.id = id;
+        this.kind = kind;
+        this.supportedTypes = supportedTypes;
+        this.bounds = bounds;
+        this.buttonX = buttonX;
+        this.buttonY = buttonY;
+    }
+
+    /**
+     * The slot with the given id, or null if there's none.
+     */
+    static ComplicationSlot get(int id) {
+        return id >= 0 && id < SLOTS.length ? SLOTS[id] : null;
+    }
+
+    static ComplicationSlot[] getAll() {
+        return SLOTS;
+    }
+
+    static int[] getIds() {
+        return IDS;
+    }
+}
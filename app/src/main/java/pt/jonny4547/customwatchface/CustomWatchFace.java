@@ -4,86 +4,77 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.*;
-import android.graphics.drawable.Drawable;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Icon;
+import android.hardware.display.DisplayManager;
+import android.os.BatteryManager;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.support.wearable.complications.ComplicationData;
-import android.support.wearable.complications.ComplicationText;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
+import android.view.Display;
 import android.view.SurfaceHolder;
+import android.view.WindowInsets;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.text.DateFormat;
-import java.util.Calendar;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 public class CustomWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "Custom Watch Face";
 
-    private static final int BACKGROUND_COMPLICATION_ID = 0;
-    private static final int RANGE_COMPLICATION_ID = 1;
-    private static final int TEXT_COMPLICATION_ID = 2;
-
-    private static final int[] COMPLICATION_IDS = {
-            BACKGROUND_COMPLICATION_ID, RANGE_COMPLICATION_ID, TEXT_COMPLICATION_ID
-    };
-
-    private static final int[][] COMPLICATION_SUPPORTED_TYPES = {
-            {
-                ComplicationData.TYPE_LARGE_IMAGE
-            },
-            {
-                ComplicationData.TYPE_RANGED_VALUE
-            },
-            {
-                ComplicationData.TYPE_SHORT_TEXT, ComplicationData.TYPE_LONG_TEXT
-            }
-    };
-
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
-
     private static final int MSG_UPDATE_TIME = 0;
-
-    static int getComplicationId(CustomWatchFaceConfigActivity.ComplicationLocation complicationLocation) {
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return BACKGROUND_COMPLICATION_ID;
-            case TOP:
-                return TEXT_COMPLICATION_ID;
-            case RANGE:
-                return RANGE_COMPLICATION_ID;
-            default:
-                return -1;
-        }
-    }
-
-    static int[] getComplicationIds() {
-        return COMPLICATION_IDS;
+    private static final int MSG_INVALIDATE = 1;
+    private static final int MSG_SAVE_SNAPSHOT = 2;
+
+    /* Complication updates arriving within this window are drawn in a single frame. */
+    private static final long INVALIDATE_COALESCE_MS = 16;
+
+    /* Provider and type changes are saved as soon as the burst of updates they cause is over. */
+    private static final long SNAPSHOT_PROVIDER_DELAY_MS = 100;
+
+    /* Below this the smooth sweep falls back to ticking. */
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    /* Created engines, only touched on the main thread. */
+    private static final List<Engine> engines = new ArrayList<>();
+
+    /**
+     * Tells the engines that the config activity, running in the same process, chose a provider
+     * for the slot. Called on the main thread.
+     */
+    static void onProviderChosen(int complicationId) {
+        if (ComplicationSlot.get(complicationId) == null)
+            return;
+        for (int i = 0; i < engines.size(); i++)
+            engines.get(i).onProviderChosen(complicationId);
     }
 
-    static int[] getSupportedComplicationTypes(CustomWatchFaceConfigActivity.ComplicationLocation complicationLocation) {
-        switch (complicationLocation) {
-            case BACKGROUND:
-                return COMPLICATION_SUPPORTED_TYPES[0];
-            case RANGE:
-                return COMPLICATION_SUPPORTED_TYPES[1];
-            case TOP:
-                return COMPLICATION_SUPPORTED_TYPES[2];
-            default:
-                return new int[] {};
-        }
+    @Override
+    public Engine onCreateEngine() {
+        return new Engine(Clock.systemUTC());
     }
 
     @Override
-    public Engine onCreateEngine() {
-        return new Engine();
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ImageCache.getInstance().trim(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW)
+            BitmapPool.getInstance().clear();
     }
 
     private static class EngineHandler extends Handler {
@@ -99,46 +90,78 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             if (engine != null) {
                 if (msg.what == MSG_UPDATE_TIME) {
                     engine.handleUpdateTimeMessage();
+                } else if (msg.what == MSG_INVALIDATE) {
+                    engine.invalidate(FrameStats.INVALIDATE_COMPLICATION);
+                } else if (msg.what == MSG_SAVE_SNAPSHOT) {
+                    engine.saveSnapshot();
                 }
             }
         }
     }
 
     private class Engine extends CanvasWatchFaceService.Engine {
-        private static final float SECOND_STROKE_WIDTH = 20f;
-        private static final float TEXT_STROKE_WIDTH = 2f;
-        private static final float SMALL_TEXT_STROKE_WIDTH = 1f;
-
-        /* Handler to update the time once a second in interactive mode. */
+        /* Handler to update the time whenever something changes in interactive mode. */
         private final Handler updateTimeHandler = new EngineHandler(this);
-        private Calendar calendar;
+        private final Clock clock;
+        private final WatchTime time;
+
+        private final FrameStats frameStats = new FrameStats();
         private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                calendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    time.setTimeZone(TimeZone.getDefault());
+                    renderer.setTimeZone(TimeZone.getDefault());
+                } else {
+                    /* Locale or 12/24 hour setting changed. */
+                    updateTimeFormat();
+                }
+                renderer.invalidate();
+                invalidate(FrameStats.INVALIDATE_TIME_ZONE);
             }
         };
         private boolean registeredTimeZoneReceiver = false;
-        private boolean muteMode;
+        private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                sweepAnimator.setBatteryLow(Intent.ACTION_BATTERY_LOW.equals(intent.getAction()));
+            }
+        };
+        /* Data type of each slot, -1 until its first update. */
+        private final int[] complicationTypes = new int[ComplicationSlot.getAll().length];
+        /* Slots whose provider or type changed, saved soon once their new data is drawn. */
+        private final boolean[] providerChanged = new boolean[ComplicationSlot.getAll().length];
         private boolean ambient;
 
-        private boolean secondMode = false;
-
-        private float centerX;
-        private float centerY;
-        private float rangeRotation = -1;
-
-        private String title = "";
-        private String text = "";
-
-        private Paint textPaint;
-        private Paint smallTextPaint;
-        private Paint secondPaint;
-
-        private DateFormat timeFormat;
-
-        private Drawable backgroundImage;
+        /* Animates the seconds arc when the smooth sweep is enabled. */
+        private boolean smoothSweep;
+        private SweepAnimator sweepAnimator;
+
+        private WatchFaceRenderer renderer;
+
+        private Locale timeLocale;
+        private boolean time24Hour;
+
+        /* Draws the frames and schedules the ticks. */
+        private FrameDriver frameDriver;
+
+        /* Kept to load the background again at a new surface size. */
+        private Icon backgroundIcon;
+        /* The icon was loaded at the current surface size. */
+        private boolean backgroundLoaded;
+        /* The image being loaded is from a new provider, it's saved soon once it's drawn. */
+        private boolean backgroundProviderChanged;
+        private BackgroundImageLoader backgroundImageLoader;
+        /* Background of the restored snapshot, waiting for the surface size to be scaled to it. */
+        private Bitmap snapshotBackground;
+        /* Something changed since the snapshot was saved, it's saved when the face is hidden. */
+        private boolean snapshotChanged;
+
+        Engine(Clock clock) {
+            this.clock = clock;
+            time = new WatchTime(clock, TimeZone.getDefault());
+            Arrays.fill(complicationTypes, -1);
+        }
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -147,72 +170,196 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             setWatchFaceStyle(new WatchFaceStyle.Builder(CustomWatchFace.this)
                     .build());
 
-            calendar = Calendar.getInstance();
+            backgroundImageLoader = new BackgroundImageLoader(CustomWatchFace.this, updateTimeHandler,
+                    new BackgroundImageLoader.Callback() {
+                        @Override
+                        public void onImageLoaded(Bitmap image) {
+                            setBackgroundImage(image);
+                        }
+                    });
 
             initializeComplications();
             initializeWatchFace();
+            initializeSweep();
+            initializeFrameDriver();
+            restoreSnapshot();
+
+            /* Providers are chosen while the face is hidden behind the config activity. */
+            engines.add(this);
+        }
+
+        private void onProviderChosen(int complicationId) {
+            /* The new data may be here already, or still to come. */
+            providerChanged[complicationId] = true;
+            scheduleSnapshotSoon();
+        }
+
+        /**
+         * Shows the last known complication state while the providers report again. Reads a
+         * small file on the main thread, so the very first frame is already complete.
+         */
+        private void restoreSnapshot() {
+            StateSnapshot snapshot = StateSnapshot.read(CustomWatchFace.this);
+            if (snapshot == null)
+                return;
+            renderer.restore(snapshot);
+            snapshotBackground = snapshot.background;
+        }
+
+        /**
+         * Saves the snapshot right after the current burst of updates, so the config activity's
+         * preview shows a newly chosen provider without waiting for the face to be hidden.
+         */
+        private void scheduleSnapshotSoon() {
+            updateTimeHandler.removeMessages(MSG_SAVE_SNAPSHOT);
+            updateTimeHandler.sendEmptyMessageDelayed(MSG_SAVE_SNAPSHOT, SNAPSHOT_PROVIDER_DELAY_MS);
+        }
+
+        private void saveSnapshot() {
+            updateTimeHandler.removeMessages(MSG_SAVE_SNAPSHOT);
+            snapshotChanged = false;
+            final StateSnapshot snapshot = renderer.getSnapshot();
+            BackgroundExecutor.get().execute(new Runnable() {
+                @Override
+                public void run() {
+                    snapshot.write(CustomWatchFace.this);
+                }
+            });
         }
 
         private void initializeComplications() {
-            setActiveComplications(COMPLICATION_IDS);
+            setActiveComplications(ComplicationSlot.getIds());
         }
 
         private void initializeWatchFace() {
-            timeFormat = DateFormat.getTimeInstance(DateFormat.SHORT);
-
-            textPaint = new Paint();
-            textPaint.setColor(0xAAFFFFFF);
-            textPaint.setStrokeWidth(TEXT_STROKE_WIDTH);
-            textPaint.setAntiAlias(true);
-            textPaint.setStrokeCap(Paint.Cap.ROUND);
-            textPaint.setTextAlign(Paint.Align.CENTER);
-            textPaint.setTypeface(Typeface.DEFAULT_BOLD);
-
-            smallTextPaint = new Paint();
-            smallTextPaint.setColor(0x88FFFFFF);
-            smallTextPaint.setStrokeWidth(SMALL_TEXT_STROKE_WIDTH);
-            smallTextPaint.setAntiAlias(true);
-            smallTextPaint.setStrokeCap(Paint.Cap.ROUND);
-            smallTextPaint.setTextAlign(Paint.Align.CENTER);
-            smallTextPaint.setTypeface(Typeface.DEFAULT_BOLD);
-            smallTextPaint.setLetterSpacing(0.025f);
-
-            secondPaint = new Paint();
-            secondPaint.setStyle(Paint.Style.STROKE);
-            secondPaint.setColor(0x88FFFFFF);
-            secondPaint.setStrokeWidth(SECOND_STROKE_WIDTH);
-            secondPaint.setAntiAlias(true);
-            secondPaint.setStrokeCap(Paint.Cap.ROUND);
+            timeLocale = Locale.getDefault();
+            time24Hour = android.text.format.DateFormat.is24HourFormat(CustomWatchFace.this);
+            renderer = new WatchFaceRenderer(CustomWatchFace.this,
+                    android.text.format.DateFormat.getTimeFormat(CustomWatchFace.this), frameStats);
+        }
+
+        private void initializeSweep() {
+            smoothSweep = getResources().getBoolean(R.bool.smooth_sweep);
+            Display display = ((DisplayManager) getSystemService(DISPLAY_SERVICE)).getDisplay(Display.DEFAULT_DISPLAY);
+            sweepAnimator = new SweepAnimator(display.getRefreshRate(),
+                    getResources().getInteger(R.integer.sweep_frame_budget_ms),
+                    new SweepAnimator.Listener() {
+                        @Override
+                        public void onFrame() {
+                            invalidate(FrameStats.INVALIDATE_SWEEP);
+                        }
+
+                        @Override
+                        public void onRateChanged(int rate) {
+                            frameStats.setSecondsRate(rate);
+                            renderer.setSmoothSeconds(rate != SweepAnimator.RATE_TICK);
+                            /* Ticks take over from the animation, or the other way around. */
+                            rescheduleTick();
+                        }
+                    });
+        }
+
+        private void initializeFrameDriver() {
+            frameDriver = new FrameDriver(clock, time, renderer, sweepAnimator, frameStats, new FrameDriver.Surface() {
+                @Override
+                public boolean isVisible() {
+                    return Engine.this.isVisible();
+                }
+
+                @Override
+                public Canvas lockCanvas(Rect dirty) {
+                    return getSurfaceHolder().lockCanvas(dirty);
+                }
+
+                @Override
+                public void unlockCanvasAndPost(Canvas canvas) {
+                    getSurfaceHolder().unlockCanvasAndPost(canvas);
+                }
+
+                @Override
+                public void invalidate() {
+                    Engine.this.invalidate();
+                }
+            });
         }
 
         @Override
         public void onDestroy() {
+            engines.remove(this);
+            /* Don't lose changes that were waiting to be saved. */
+            if (snapshotChanged || updateTimeHandler.hasMessages(MSG_SAVE_SNAPSHOT))
+                saveSnapshot();
+            sweepAnimator.stop();
             updateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            updateTimeHandler.removeMessages(MSG_INVALIDATE);
+            backgroundImageLoader.cancel();
+            renderer.release();
             super.onDestroy();
         }
 
+        @Override
+        public void onApplyWindowInsets(WindowInsets insets) {
+            super.onApplyWindowInsets(insets);
+            renderer.setRound(insets.isRound());
+        }
+
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+
+            renderer.setLowBitAmbient(properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false));
+            renderer.setBurnInProtection(properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
+        }
+
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            secondMode = !secondMode;
-            invalidate();
+            invalidate(FrameStats.INVALIDATE_TIME_TICK);
         }
 
         @Override
         public void onComplicationDataUpdate(int watchFaceComplicationId, ComplicationData data) {
-            switch (watchFaceComplicationId) {
-                case BACKGROUND_COMPLICATION_ID:
-                    updateBackground(data);
-                    break;
-                case RANGE_COMPLICATION_ID:
-                    updateRange(data);
-                    break;
-                case TEXT_COMPLICATION_ID:
-                    updateText(data);
-                    break;
+            frameStats.begin(FrameStats.STAGE_COMPLICATION_UPDATE);
+            boolean changed = false;
+            ComplicationSlot slot = ComplicationSlot.get(watchFaceComplicationId);
+            if (slot != null)
+                updateComplicationType(slot.id, data);
+
+            if (slot == null) {
+                Log.w(TAG, "Unknown complication: " + watchFaceComplicationId);
+            } else if (slot.kind == ComplicationSlot.KIND_BACKGROUND) {
+                /* The image is loaded asynchronously and invalidates once it's ready. */
+                backgroundProviderChanged |= providerChanged[slot.id];
+                providerChanged[slot.id] = false;
+                updateBackground(data);
+            } else {
+                changed = renderer.setComplicationData(slot.id, data, time.currentTimeMillis());
+                /* Wake up for the animation frames instead of at the next tick. */
+                if (changed && renderer.isAnimating())
+                    rescheduleTick();
             }
 
-            invalidate();
+            /* Complications tend to report back to back, draw them all in one frame. */
+            if (changed && !updateTimeHandler.hasMessages(MSG_INVALIDATE))
+                updateTimeHandler.sendEmptyMessageDelayed(MSG_INVALIDATE, INVALIDATE_COALESCE_MS);
+            if (slot != null && slot.kind != ComplicationSlot.KIND_BACKGROUND && providerChanged[slot.id]) {
+                providerChanged[slot.id] = false;
+                scheduleSnapshotSoon();
+            } else if (changed) {
+                snapshotChanged = true;
+            }
+            frameStats.end(FrameStats.STAGE_COMPLICATION_UPDATE);
+        }
+
+        /**
+         * Flags the slot as changed provider when its data changes type. The first update after
+         * starting doesn't count, the type before it isn't known.
+         */
+        private void updateComplicationType(int complicationId, ComplicationData data) {
+            int type = data == null ? ComplicationData.TYPE_EMPTY : data.getType();
+            if (complicationTypes[complicationId] != -1 && complicationTypes[complicationId] != type)
+                providerChanged[complicationId] = true;
+            complicationTypes[complicationId] = type;
         }
 
         private void updateBackground(ComplicationData data) {
@@ -223,51 +370,43 @@ public class CustomWatchFace extends CanvasWatchFaceService {
 
             Icon image = data.getLargeImage();
             if (image != null) {
-                backgroundImage = image.loadDrawable(getApplicationContext());
-                Rect bounds = backgroundImage.getBounds();
-                float ar = bounds.width() == bounds.height() ? 1 : (float) bounds.width() / bounds.height();
-                float newCX = centerX * ar;
-                Rect newBounds = new Rect(0, 0, (int) (newCX * 2), (int) centerY * 2);
-                newBounds.offsetTo((int) (centerX - newCX), 0);
-                backgroundImage.setBounds(newBounds);
+                backgroundIcon = image;
+                backgroundLoaded = false;
+                loadBackground();
             }
         }
 
-        private void updateRange(ComplicationData data) {
-            if (data == null || data.getType() != ComplicationData.TYPE_RANGED_VALUE) {
-                rangeRotation = -1;
+        private void loadBackground() {
+            /* Wait for the surface size, the image is decoded to it. */
+            if (backgroundIcon == null || backgroundLoaded || renderer.getWidth() == 0 || renderer.getHeight() == 0)
                 return;
-            }
 
-            float min = data.getMinValue();
-            float max = data.getMaxValue();
-            float value = data.getValue();
-            rangeRotation = (value * 360)/(max-min);
+            backgroundImageLoader.load(backgroundIcon, renderer.getWidth(), renderer.getHeight());
+            backgroundLoaded = true;
         }
 
-        private void updateText(ComplicationData data) {
-            if (data == null || !(data.getType() == ComplicationData.TYPE_SHORT_TEXT || data.getType() == ComplicationData.TYPE_LONG_TEXT)) {
-                text = "";
-                title = "";
-                return;
-            }
+        private void setBackgroundImage(Bitmap image) {
+            snapshotBackground = null;
+            renderer.setBackgroundImage(image);
+            invalidate(FrameStats.INVALIDATE_BACKGROUND);
+            if (backgroundProviderChanged)
+                scheduleSnapshotSoon();
+            else
+                snapshotChanged = true;
+            backgroundProviderChanged = false;
+        }
 
-            boolean isShort = data.getType() == ComplicationData.TYPE_SHORT_TEXT;
-            long millis = calendar.getTimeInMillis();
-            ComplicationText text = isShort ? data.getShortText() : data.getLongText();
-            ComplicationText title = isShort ? data.getShortTitle() : data.getLongTitle();
-            if (text != null) {
-                this.text = text.getText(getApplicationContext(), millis).toString().trim();
-            } else
-                this.text = "";
-            if (title != null) {
-                this.title = title.getText(getApplicationContext(), millis).toString().trim();
-                if (this.title.contains("("))
-                    this.title = this.title.substring(0, this.title.lastIndexOf('(')).trim();
-                if (this.title.contains(" - "))
-                    this.title = this.title.substring(0, this.title.lastIndexOf('-')).trim();
-            } else
-                this.title = "";
+        /**
+         * Scales the snapshot's background up to the surface, unless the real one is already
+         * there.
+         */
+        private void restoreSnapshotBackground() {
+            if (snapshotBackground == null || renderer.getWidth() == 0 || renderer.getHeight() == 0)
+                return;
+            if (renderer.getBackgroundImage() == null)
+                renderer.setBackgroundImage(BackgroundImageLoader.render(
+                        new BitmapDrawable(getResources(), snapshotBackground), renderer.getWidth(), renderer.getHeight()));
+            snapshotBackground = null;
         }
 
         @Override
@@ -275,28 +414,12 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             ambient = inAmbientMode;
 
-            updateStyle();
+            renderer.setAmbient(inAmbientMode);
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
             updateTimer();
         }
 
-        private void updateStyle() {
-            if (ambient) {
-                textPaint.setAntiAlias(false);
-                smallTextPaint.setAntiAlias(false);
-
-                textPaint.setStyle(Paint.Style.STROKE);
-                smallTextPaint.setStyle(Paint.Style.STROKE);
-            } else {
-                textPaint.setAntiAlias(true);
-                smallTextPaint.setAntiAlias(true);
-
-                textPaint.setStyle(Paint.Style.FILL);
-                smallTextPaint.setStyle(Paint.Style.FILL);
-            }
-        }
-
         //TODO
         @Override
         public void onInterruptionFilterChanged(int interruptionFilter) {
@@ -304,10 +427,9 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             boolean inMuteMode = (interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE);
 
             /* Dim display in mute mode. */
-            if (muteMode != inMuteMode) {
-                muteMode = inMuteMode;
-                secondPaint.setAlpha(inMuteMode ? 80 : 255);
-                invalidate();
+            if (renderer.setMuteMode(inMuteMode)) {
+                invalidate(FrameStats.INVALIDATE_MUTE);
+                updateTimer();
             }
         }
 
@@ -315,61 +437,18 @@ public class CustomWatchFace extends CanvasWatchFaceService {
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
 
-            centerX = width / 2f;
-            centerY = height / 2f;
+            /* The background is decoded to the surface size, load it again at the new one. */
+            if (width != renderer.getWidth() || height != renderer.getHeight())
+                backgroundLoaded = false;
+            renderer.setSurfaceSize(width, height);
 
-            textPaint.setTextSize(height*.25f);
-            smallTextPaint.setTextSize(height*.075f);
+            restoreSnapshotBackground();
+            loadBackground();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            calendar.setTimeInMillis(now);
-
-            drawBackground(canvas);
-            drawWatchFace(canvas);
-        }
-
-        private void drawBackground(Canvas canvas) {
-            if (ambient || backgroundImage == null)
-                canvas.drawColor(Color.BLACK);
-            else {
-                backgroundImage.draw(canvas);
-                canvas.drawColor(0xAA000000);
-            }
-        }
-
-        private void drawWatchFace(Canvas canvas) {
-            final float centerY = this.centerY + canvas.getHeight()*.10f;
-            canvas.drawText(timeFormat.format(calendar.getTime()).split(" ")[0], centerX, centerY, textPaint);
-
-            if (!ambient) {
-                canvas.drawText(title, centerX, centerY - canvas.getHeight()*.20f, smallTextPaint);
-                canvas.drawText(text, centerX, centerY + canvas.getHeight()*.075f, smallTextPaint);
-
-                float secondsRotation = calendar.get(Calendar.SECOND) * 6f;
-                if (secondMode) {
-                    secondsRotation = 360 - secondsRotation;
-                }
-
-                float s = SECOND_STROKE_WIDTH*.5f;
-
-                canvas.save();
-                canvas.rotate(-.5f*secondsRotation, centerX, this.centerY);
-                canvas.drawArc(s, s, canvas.getWidth()-s, canvas.getHeight()-s, 0, secondsRotation, false, secondPaint);
-                canvas.restore();
-
-                if (rangeRotation >= 0) {
-                    canvas.save();
-                    canvas.rotate(90, centerX, this.centerY);
-                    canvas.rotate(-.5f*rangeRotation, centerX, this.centerY);
-                    canvas.drawArc(s, s, canvas.getWidth()-s, canvas.getHeight()-s, 0, rangeRotation, false, secondPaint);
-                    canvas.restore();
-                }
-            } else {
-                canvas.drawCircle(centerX, this.centerY, canvas.getWidth()*.5f-20f, smallTextPaint);
-            }
+            frameDriver.draw(canvas, bounds);
         }
 
         @Override
@@ -379,23 +458,57 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
                 /* Update time zone in case it changed while we weren't visible. */
-                calendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                time.setTimeZone(TimeZone.getDefault());
+                renderer.setTimeZone(TimeZone.getDefault());
+                updateTimeFormat();
+                invalidate(FrameStats.INVALIDATE_VISIBILITY);
             } else {
                 unregisterReceiver();
+                if (snapshotChanged)
+                    saveSnapshot();
             }
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
             updateTimer();
         }
 
+        /**
+         * Rebuilds the time format if the locale or the 12/24 hour setting changed.
+         */
+        private void updateTimeFormat() {
+            Locale locale = Locale.getDefault();
+            boolean is24Hour = android.text.format.DateFormat.is24HourFormat(CustomWatchFace.this);
+            if (locale.equals(timeLocale) && is24Hour == time24Hour)
+                return;
+
+            timeLocale = locale;
+            time24Hour = is24Hour;
+            renderer.setTimeFormat(android.text.format.DateFormat.getTimeFormat(CustomWatchFace.this));
+        }
+
         private void registerReceiver() {
             if (registeredTimeZoneReceiver) {
                 return;
             }
             registeredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             CustomWatchFace.this.registerReceiver(timeZoneReceiver, filter);
+
+            /* Only the smooth sweep cares about the battery. */
+            if (!smoothSweep)
+                return;
+            IntentFilter batteryFilter = new IntentFilter(Intent.ACTION_BATTERY_LOW);
+            batteryFilter.addAction(Intent.ACTION_BATTERY_OKAY);
+            CustomWatchFace.this.registerReceiver(batteryReceiver, batteryFilter);
+            /* The low and okay broadcasts aren't sticky, read the current level. */
+            Intent battery = CustomWatchFace.this.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery != null) {
+                int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+                sweepAnimator.setBatteryLow(level >= 0 && scale > 0 && level * 100 < LOW_BATTERY_PERCENT * scale);
+            }
         }
 
         private void unregisterReceiver() {
@@ -404,13 +517,25 @@ public class CustomWatchFace extends CanvasWatchFaceService {
             }
             registeredTimeZoneReceiver = false;
             CustomWatchFace.this.unregisterReceiver(timeZoneReceiver);
+            if (smoothSweep)
+                CustomWatchFace.this.unregisterReceiver(batteryReceiver);
         }
 
         /**
-         * Starts/stops the {@link #updateTimeHandler} timer based on the state of the watch face.
+         * Starts/stops the {@link #updateTimeHandler} timer and the smooth sweep based on the
+         * state of the watch face.
          */
         private void updateTimer() {
+            if (smoothSweep && shouldTimerBeRunning() && renderer.shouldDrawSeconds())
+                sweepAnimator.start();
+            else
+                sweepAnimator.stop();
+            rescheduleTick();
+        }
+
+        private void rescheduleTick() {
             updateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            frameDriver.cancelTick();
             if (shouldTimerBeRunning()) {
                 updateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
             }
@@ -425,16 +550,29 @@ public class CustomWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time in interactive mode, waking up again at the next instant
+         * anything on the face changes.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                updateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
+            /* The frame for this tick is due now. */
+            frameDriver.tickDue();
+            invalidate(FrameStats.INVALIDATE_TICK);
+            if (shouldTimerBeRunning())
+                updateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, frameDriver.scheduleNextTick());
+        }
+
+        private void invalidate(int source) {
+            /* Any pending complication changes are drawn in this frame too. */
+            updateTimeHandler.removeMessages(MSG_INVALIDATE);
+            frameDriver.invalidate(source);
+        }
+
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+            super.dump(prefix, fd, writer, args);
+            writer.print(prefix);
+            writer.println("Frame stats:");
+            frameStats.dump(prefix + "  ", writer);
         }
     }
 }
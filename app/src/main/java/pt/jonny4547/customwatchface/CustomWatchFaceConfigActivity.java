@@ -3,6 +3,7 @@ package pt.jonny4547.customwatchface;
 import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import androidx.annotation.Nullable;
@@ -12,8 +13,11 @@ import android.support.wearable.complications.ProviderChooserIntent;
 import android.support.wearable.complications.ProviderInfoRetriever;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class CustomWatchFaceConfigActivity extends Activity implements View.OnClickListener {
@@ -21,28 +25,23 @@ public class CustomWatchFaceConfigActivity extends Activity implements View.OnCl
     private static final String TAG = "Custom Watch Face Config";
     static final int COMPLICATION_CONFIG_REQUEST_CODE = 1201;
 
-    public enum ComplicationLocation {
-        BACKGROUND,
-        RANGE,
-        TOP
-    }
-
-    private int backgroundComplicationId;
-    private int rangeComplicationId;
-    private int textComplicationId;
-
     private int selectedComplicationId;
 
     private ComponentName watchFaceComponentName;
 
     private ProviderInfoRetriever providerInfoRetriever;
+    /* The retriever blocks its thread until the provider service connects, so it gets its own. */
+    private ExecutorService providerInfoExecutor;
+    private ProviderInfoCache providerInfoCache;
 
-    private ImageButton backgroundComplication;
-    private ImageButton rangeComplication;
-    private ImageButton textComplication;
+    /* By slot id. */
+    private ImageButton[] complicationButtons;
 
     private Drawable defaultAddComplicationDrawable;
 
+    private ImageView watchFacePreview;
+    private WatchFacePreview preview;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -53,40 +52,94 @@ public class CustomWatchFaceConfigActivity extends Activity implements View.OnCl
 
         selectedComplicationId = -1;
 
-        backgroundComplicationId = CustomWatchFace.getComplicationId(ComplicationLocation.BACKGROUND);
-        rangeComplicationId = CustomWatchFace.getComplicationId(ComplicationLocation.RANGE);
-        textComplicationId = CustomWatchFace.getComplicationId(ComplicationLocation.TOP);
-
-        backgroundComplication = findViewById(R.id.background_complication);
-        backgroundComplication.setOnClickListener(this);
-        rangeComplication = findViewById(R.id.range_complication);
-        rangeComplication.setOnClickListener(this);
-        textComplication = findViewById(R.id.text_complication);
-        textComplication.setOnClickListener(this);
+        createComplicationButtons();
 
         watchFaceComponentName = new ComponentName(getApplicationContext(), CustomWatchFace.class);
 
-        providerInfoRetriever = new ProviderInfoRetriever(getApplicationContext(), Executors.newCachedThreadPool());
+        watchFacePreview = findViewById(R.id.watch_face_preview);
+        preview = new WatchFacePreview(this, getResources().getDisplayMetrics().widthPixels,
+                getResources().getDisplayMetrics().heightPixels, getResources().getConfiguration().isScreenRound(),
+                new WatchFacePreview.Callback() {
+                    @Override
+                    public void onPreviewRendered(Bitmap bitmap) {
+                        watchFacePreview.setImageBitmap(bitmap);
+                    }
+                });
+
+        /* Show what's cached right away, the retriever reconciles it once it answers. */
+        providerInfoCache = new ProviderInfoCache(this);
+        for (int complicationId : ComplicationSlot.getIds()) {
+            if (providerInfoCache.contains(complicationId))
+                updateComplicationViews(complicationId, providerInfoCache.getThumbnail(complicationId));
+        }
+
+        providerInfoExecutor = Executors.newSingleThreadExecutor();
+        providerInfoRetriever = new ProviderInfoRetriever(getApplicationContext(), providerInfoExecutor);
         providerInfoRetriever.init();
 
         retrieveInitialComplicationsData();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        preview.start();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        preview.stop();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         providerInfoRetriever.release();
+        /* A retrieval still waiting for the service is interrupted. */
+        providerInfoExecutor.shutdownNow();
+    }
+
+    /**
+     * Adds a button for each slot, centered on the slot's button position.
+     */
+    private void createComplicationButtons() {
+        ViewGroup container = findViewById(R.id.complication_slots);
+        View.OnLayoutChangeListener positioner = new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View button, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                /* Buttons change size with their icons, so they're placed whenever they're laid out. */
+                View parent = (View) button.getParent();
+                ComplicationSlot slot = (ComplicationSlot) button.getTag();
+                button.setTranslationX(slot.buttonX * parent.getWidth() - left - (right - left) / 2f);
+                button.setTranslationY(slot.buttonY * parent.getHeight() - top - (bottom - top) / 2f);
+            }
+        };
+
+        ComplicationSlot[] slots = ComplicationSlot.getAll();
+        complicationButtons = new ImageButton[slots.length];
+        for (ComplicationSlot slot : slots) {
+            ImageButton button = new ImageButton(this);
+            button.setBackgroundColor(0);
+            button.setTag(slot);
+            button.setOnClickListener(this);
+            button.addOnLayoutChangeListener(positioner);
+            container.addView(button, new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            complicationButtons[slot.id] = button;
+        }
     }
 
     public void retrieveInitialComplicationsData() {
-        final int[] complicationIds = CustomWatchFace.getComplicationIds();
+        final int[] complicationIds = ComplicationSlot.getIds();
 
         providerInfoRetriever.retrieveProviderInfo(
                 new ProviderInfoRetriever.OnProviderInfoReceivedCallback() {
                     @Override
                     public void onProviderInfoReceived(int watchFaceComplicationId, @Nullable ComplicationProviderInfo info) {
                         Log.d(TAG, "onProviderInfoReceived: " + info);
-                        updateComplicationViews(watchFaceComplicationId, info);
+                        updateProviderInfo(watchFaceComplicationId, info);
                     }
                 },
                 watchFaceComponentName,
@@ -96,56 +149,48 @@ public class CustomWatchFaceConfigActivity extends Activity implements View.OnCl
 
     @Override
     public void onClick(View view) {
-        if (view == backgroundComplication) {
-            launchComplicationHelperActivity(ComplicationLocation.BACKGROUND);
-        }
-        if (view == rangeComplication) {
-            launchComplicationHelperActivity(ComplicationLocation.RANGE);
-        }
-        if (view == textComplication) {
-            launchComplicationHelperActivity(ComplicationLocation.TOP);
-        }
+        launchComplicationHelperActivity((ComplicationSlot) view.getTag());
     }
 
-    private void launchComplicationHelperActivity(ComplicationLocation complicationLocation) {
-        selectedComplicationId = CustomWatchFace.getComplicationId(complicationLocation);
+    private void launchComplicationHelperActivity(ComplicationSlot slot) {
+        selectedComplicationId = slot.id;
 
-        if (selectedComplicationId >= 0) {
-            int[] supportedTypes = CustomWatchFace.getSupportedComplicationTypes(complicationLocation);
+        startActivityForResult(ComplicationHelperActivity.createProviderChooserHelperIntent(
+                getApplicationContext(),
+                watchFaceComponentName,
+                slot.id,
+                slot.supportedTypes
+        ), COMPLICATION_CONFIG_REQUEST_CODE);
+    }
 
-            startActivityForResult(ComplicationHelperActivity.createProviderChooserHelperIntent(
-                    getApplicationContext(),
-                    watchFaceComponentName,
-                    selectedComplicationId,
-                    supportedTypes
-            ), COMPLICATION_CONFIG_REQUEST_CODE);
-        } else {
-            Log.d(TAG, "Complication not supported");
-        }
+    /**
+     * Updates the cache with the slot's provider. The view only changes, once the new thumbnail
+     * is rendered off the main thread, if the provider differs from the cached one.
+     */
+    private void updateProviderInfo(int watchFaceComplicationId, ComplicationProviderInfo complicationProviderInfo) {
+        providerInfoCache.update(watchFaceComplicationId, complicationProviderInfo, new ProviderInfoCache.Callback() {
+            @Override
+            public void onThumbnailChanged(int complicationId, Bitmap thumbnail) {
+                if (isDestroyed())
+                    return;
+                updateComplicationViews(complicationId, thumbnail);
+                /* The provider differs from the one last seen, so may the snapshot. */
+                preview.refresh();
+            }
+        });
     }
 
-    public void updateComplicationViews(int watchFaceComplicationId, ComplicationProviderInfo complicationProviderInfo) {
+    public void updateComplicationViews(int watchFaceComplicationId, Bitmap thumbnail) {
         Log.d(TAG, "updateComplicationViews(): id: " + watchFaceComplicationId);
-        Log.d(TAG, "\tinfo: " + complicationProviderInfo);
 
-        if (watchFaceComplicationId == backgroundComplicationId) {
-            if (complicationProviderInfo != null) {
-                backgroundComplication.setImageIcon(complicationProviderInfo.providerIcon);
-            } else {
-                backgroundComplication.setImageDrawable(defaultAddComplicationDrawable);
-            }
-        } else if (watchFaceComplicationId == rangeComplicationId) {
-            if (complicationProviderInfo != null) {
-                rangeComplication.setImageIcon(complicationProviderInfo.providerIcon);
-            } else {
-                rangeComplication.setImageDrawable(defaultAddComplicationDrawable);
-            }
-        } else if (watchFaceComplicationId == textComplicationId) {
-            if (complicationProviderInfo != null) {
-                textComplication.setImageIcon(complicationProviderInfo.providerIcon);
-            } else {
-                textComplication.setImageDrawable(defaultAddComplicationDrawable);
-            }
+        if (ComplicationSlot.get(watchFaceComplicationId) == null)
+            return;
+        ImageButton view = complicationButtons[watchFaceComplicationId];
+
+        if (thumbnail != null) {
+            view.setImageBitmap(thumbnail);
+        } else {
+            view.setImageDrawable(defaultAddComplicationDrawable);
         }
     }
 
@@ -156,7 +201,10 @@ public class CustomWatchFaceConfigActivity extends Activity implements View.OnCl
             Log.d(TAG, "Provider: " + complicationProviderInfo);
 
             if (selectedComplicationId >= 0) {
-                updateComplicationViews(selectedComplicationId, complicationProviderInfo);
+                updateProviderInfo(selectedComplicationId, complicationProviderInfo);
+                preview.providerChanged(selectedComplicationId);
+                /* Has the engine save its snapshot as soon as the new data arrives. */
+                CustomWatchFace.onProviderChosen(selectedComplicationId);
             }
         }
     }
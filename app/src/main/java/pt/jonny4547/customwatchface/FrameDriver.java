@@ -0,0 +1,169 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.time.Clock;
+
+/**
+ * The engine's frame path: draws a frame whenever something invalidates the face, repainting only
+ * the part of the surface that changed where the renderer can tell what that is, and works out
+ * when the next tick is due. Kept out of the engine so it can be driven offscreen.
+ */
+class FrameDriver {
+
+    private static final String TAG = "Frame Driver";
+
+    /**
+     * Where frames are drawn, the engine's surface.
+     */
+    interface Surface {
+        boolean isVisible();
+
+        /**
+         * Locks part of the surface for drawing, or returns null if it can't be locked. The rect
+         * may grow to what the surface needs repainted.
+         */
+        Canvas lockCanvas(Rect dirty);
+
+        void unlockCanvasAndPost(Canvas canvas);
+
+        /**
+         * Asks for a frame of the whole surface, which is then drawn with {@link #draw}.
+         */
+        void invalidate();
+    }
+
+    private final WatchTime time;
+    private final WatchFaceRenderer renderer;
+    private final SweepAnimator sweepAnimator;
+    private final FrameStats frameStats;
+    private final Surface surface;
+
+    private final TickScheduler tickScheduler;
+    private long nextTickDeadline;
+    /* When the frame being drawn was due, 0 if it wasn't scheduled. */
+    private long tickDeadline;
+
+    /* Area repainted by a partial redraw, reused between frames. */
+    private final Rect dirtyRect = new Rect();
+    /* A full redraw was requested and will repaint everything anyway. */
+    private boolean fullRedrawPending;
+
+    FrameDriver(Clock clock, WatchTime time, final WatchFaceRenderer renderer, final SweepAnimator sweepAnimator,
+                FrameStats frameStats, Surface surface) {
+        this.time = time;
+        this.renderer = renderer;
+        this.sweepAnimator = sweepAnimator;
+        this.frameStats = frameStats;
+        this.surface = surface;
+
+        tickScheduler = new TickScheduler(clock);
+        tickScheduler.addSource(new TickScheduler.Source() {
+            @Override
+            public long getNextChange(long now) {
+                if (!renderer.shouldDrawSeconds() || sweepAnimator.isAnimating())
+                    return TickScheduler.NEVER;
+                return TickScheduler.nextSecond(now);
+            }
+        });
+        tickScheduler.addSource(new TickScheduler.Source() {
+            @Override
+            public long getNextChange(long now) {
+                return renderer.getNextSlotChange(now);
+            }
+        });
+    }
+
+    /**
+     * Draws a frame of the whole surface.
+     */
+    void draw(Canvas canvas, Rect bounds) {
+        fullRedrawPending = false;
+        time.update();
+        drawFrame(canvas);
+        frameStats.framePainted((long) bounds.width() * bounds.height(), (long) bounds.width() * bounds.height());
+        frameFinished();
+    }
+
+    /**
+     * Draws the changes since the last frame, partially if possible.
+     */
+    void invalidate(int source) {
+        frameStats.invalidated(source);
+        /* The surface may have been lost while invisible, repaint all of it. */
+        if (source == FrameStats.INVALIDATE_VISIBILITY || !drawPartial()) {
+            fullRedrawPending = true;
+            surface.invalidate();
+        }
+    }
+
+    /**
+     * Marks the next frame as the one for the tick that's due now.
+     */
+    void tickDue() {
+        tickDeadline = nextTickDeadline;
+    }
+
+    /**
+     * Milliseconds from now until the next instant anything on the face changes, when the frame
+     * for the next tick is due.
+     */
+    long scheduleNextTick() {
+        long delayMs = tickScheduler.getDelay();
+        nextTickDeadline = time.currentTimeMillis() + delayMs;
+        return delayMs;
+    }
+
+    /**
+     * Forgets the scheduled tick.
+     */
+    void cancelTick() {
+        nextTickDeadline = 0;
+    }
+
+    private void drawFrame(Canvas canvas) {
+        frameStats.begin(FrameStats.STAGE_DRAW);
+        renderer.draw(canvas, time);
+        frameStats.end(FrameStats.STAGE_DRAW);
+        sweepAnimator.frameDrawn(frameStats.getLastNanos(FrameStats.STAGE_DRAW));
+    }
+
+    private void frameFinished() {
+        frameStats.frameFinished(tickDeadline, time.currentTimeMillis());
+        tickDeadline = 0;
+    }
+
+    /**
+     * Repaints only the part of the surface that changed, if the renderer can tell what that
+     * is. Returns false if the whole surface has to be redrawn instead.
+     */
+    private boolean drawPartial() {
+        if (fullRedrawPending || !surface.isVisible())
+            return false;
+
+        time.update();
+        if (!renderer.getDirtyRect(time, dirtyRect))
+            return false;
+
+        long surfacePixels = (long) renderer.getWidth() * renderer.getHeight();
+        if (!dirtyRect.isEmpty()) {
+            Canvas canvas;
+            try {
+                canvas = surface.lockCanvas(dirtyRect);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.w(TAG, "Failed to lock the surface for a partial redraw", e);
+                return false;
+            }
+            if (canvas == null)
+                return false;
+            drawFrame(canvas);
+            surface.unlockCanvasAndPost(canvas);
+        }
+
+        frameStats.framePainted(Math.min(surfacePixels, (long) dirtyRect.width() * dirtyRect.height()), surfacePixels);
+        frameFinished();
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package pt.jonny4547.customwatchface;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Low overhead timing of the rendering stages of an engine. Each stage is recorded into a
+ * power of two latency histogram and shows up as a section in system traces. Also counts
+ * missed frame deadlines, invalidations by source and how much of the surface frames repaint.
+ * Only meant to be used from the engine's thread; read through {@link #dump}.
+ */
+class FrameStats {
+
+    static final int STAGE_DRAW = 0;
+    static final int STAGE_BACKGROUND = 1;
+    static final int STAGE_WATCH_FACE = 2;
+    static final int STAGE_COMPLICATION_UPDATE = 3;
+
+    private static final String[] STAGE_NAMES = {
+            "onDraw", "drawBackground", "drawWatchFace", "onComplicationDataUpdate"
+    };
+
+    static final int INVALIDATE_TICK = 0;
+    static final int INVALIDATE_TIME_TICK = 1;
+    static final int INVALIDATE_COMPLICATION = 2;
+    static final int INVALIDATE_BACKGROUND = 3;
+    static final int INVALIDATE_MUTE = 4;
+    static final int INVALIDATE_TIME_ZONE = 5;
+    static final int INVALIDATE_VISIBILITY = 6;
+    static final int INVALIDATE_SWEEP = 7;
+
+    private static final String[] INVALIDATE_NAMES = {
+            "tick", "time tick", "complication", "background", "mute", "time zone", "visibility",
+            "sweep"
+    };
+
+    /* A frame that finishes later than this after its deadline is missed. */
+    static final long FRAME_BUDGET_MS = 16;
+
+    /* Bucket i holds durations in [2^(i-1), 2^i) nanoseconds. */
+    private static final int BUCKETS = 64;
+
+    private final long[][] histograms = new long[STAGE_NAMES.length][BUCKETS];
+    private final long[] counts = new long[STAGE_NAMES.length];
+    private final long[] totalNanos = new long[STAGE_NAMES.length];
+    private final long[] maxNanos = new long[STAGE_NAMES.length];
+    private final long[] startNanos = new long[STAGE_NAMES.length];
+    private final long[] lastNanos = new long[STAGE_NAMES.length];
+
+    private final long[] invalidates = new long[INVALIDATE_NAMES.length];
+
+    private long frames;
+    private long missedDeadlines;
+
+    /* Pixels repainted by frames, and the pixels of their surfaces. */
+    private long paintedPixels;
+    private long surfacePixels;
+    private long partialFrames;
+
+    /* Frames per second of the seconds arc, 1 when it ticks. */
+    private int secondsRate = 1;
+    private long secondsRateChanges;
+
+    void begin(int stage) {
+        Trace.beginSection(STAGE_NAMES[stage]);
+        startNanos[stage] = System.nanoTime();
+    }
+
+    void end(int stage) {
+        long nanos = System.nanoTime() - startNanos[stage];
+        Trace.endSection();
+
+        lastNanos[stage] = nanos;
+        histograms[stage][BUCKETS - Long.numberOfLeadingZeros(nanos)]++;
+        counts[stage]++;
+        totalNanos[stage] += nanos;
+        if (nanos > maxNanos[stage])
+            maxNanos[stage] = nanos;
+    }
+
+    /**
+     * How long the stage took the last time it ran.
+     */
+    long getLastNanos(int stage) {
+        return lastNanos[stage];
+    }
+
+    void setSecondsRate(int rate) {
+        if (rate == secondsRate)
+            return;
+        secondsRate = rate;
+        secondsRateChanges++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.setCounter("secondsRate", rate);
+    }
+
+    void invalidated(int source) {
+        invalidates[source]++;
+    }
+
+    /**
+     * Records a finished frame that was due at {@code deadlineMillis}, or at no particular time
+     * if that's 0.
+     */
+    void frameFinished(long deadlineMillis, long finishedMillis) {
+        frames++;
+        if (deadlineMillis != 0 && finishedMillis - deadlineMillis > FRAME_BUDGET_MS)
+            missedDeadlines++;
+    }
+
+    /**
+     * Records how many pixels of the surface a frame repainted.
+     */
+    void framePainted(long pixels, long totalPixels) {
+        paintedPixels += pixels;
+        surfacePixels += totalPixels;
+        if (pixels < totalPixels)
+            partialFrames++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && totalPixels > 0)
+            Trace.setCounter("repaintedPercent", pixels * 100 / totalPixels);
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Frames: " + frames + ", missed deadlines: " + missedDeadlines);
+        writer.print(prefix);
+        writer.println("Seconds rate: " + secondsRate + " fps, changes: " + secondsRateChanges);
+        writer.print(prefix);
+        writer.println(String.format(Locale.ROOT, "Repainted: %.1f%% of pixels, partial frames: %d",
+                surfacePixels == 0 ? 0 : paintedPixels * 100.0 / surfacePixels, partialFrames));
+
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            long count = counts[stage];
+            writer.print(prefix);
+            if (count == 0) {
+                writer.println(STAGE_NAMES[stage] + ": no samples");
+                continue;
+            }
+            writer.println(String.format(Locale.ROOT,
+                    "%s: n=%d mean=%.1fus p50<%dus p90<%dus p99<%dus max=%.1fus",
+                    STAGE_NAMES[stage], count, totalNanos[stage] / 1000.0 / count,
+                    percentileMicros(stage, .5), percentileMicros(stage, .9), percentileMicros(stage, .99),
+                    maxNanos[stage] / 1000.0));
+        }
+
+        writer.print(prefix);
+        writer.print("Invalidates:");
+        for (int source = 0; source < INVALIDATE_NAMES.length; source++)
+            writer.print(" " + INVALIDATE_NAMES[source] + "=" + invalidates[source]);
+        writer.println();
+    }
+
+    /**
+     * Upper bound of the histogram bucket holding the given percentile.
+     */
+    private long percentileMicros(int stage, double percentile) {
+        long target = (long) Math.ceil(counts[stage] * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histograms[stage][bucket];
+            if (seen >= target)
+                return Math.max(1, (1L << bucket) / 1000);
+        }
+        return maxNanos[stage] / 1000;
+    }
+}
@@ -0,0 +1,96 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * The digits and time separators pre-rendered once with a given text paint, so the time can be
+ * drawn by copying cells instead of shaping and rasterizing large text. Glyphs are stored as an
+ * alpha mask and tinted with the color of the paint they're drawn with. Masks are shared
+ * between engines through the {@link ImageCache} under a key naming the paint.
+ */
+class GlyphAtlas {
+
+    private static final String GLYPHS = "0123456789:.";
+
+    /* Room for anti-aliasing around each glyph. */
+    private static final int PADDING = 2;
+
+    private static final int MAX_LENGTH = 16;
+
+    private final Paint paint;
+    private final Bitmap bitmap;
+
+    /* Where each glyph is in the atlas, and where its cell sits relative to the pen position. */
+    private final Rect[] cells = new Rect[GLYPHS.length()];
+    private final int[] cellLeft = new int[GLYPHS.length()];
+    private final int[] cellTop = new int[GLYPHS.length()];
+
+    private final float[] widths = new float[MAX_LENGTH];
+    private final Rect destination = new Rect();
+
+    GlyphAtlas(Paint textPaint, String key) {
+        paint = new Paint(textPaint);
+        paint.setTextAlign(Paint.Align.LEFT);
+        paint.setColor(0xFFFFFFFF);
+
+        int margin = PADDING + (paint.getStyle() == Paint.Style.FILL ? 0 : (int) Math.ceil(paint.getStrokeWidth()));
+        Rect bounds = new Rect();
+        int width = 0;
+        int height = 0;
+        for (int i = 0; i < cells.length; i++) {
+            paint.getTextBounds(GLYPHS, i, i + 1, bounds);
+            bounds.inset(-margin, -margin);
+            cells[i] = new Rect(width, 0, width + bounds.width(), bounds.height());
+            cellLeft[i] = bounds.left;
+            cellTop[i] = bounds.top;
+            width += bounds.width();
+            height = Math.max(height, bounds.height());
+        }
+
+        key = "glyphs:" + key;
+        Bitmap cached = ImageCache.getInstance().acquire(key);
+        if (cached == null) {
+            cached = BitmapPool.getInstance().acquire(Math.max(1, width), Math.max(1, height), Bitmap.Config.ALPHA_8);
+            Canvas canvas = new Canvas(cached);
+            for (int i = 0; i < cells.length; i++)
+                canvas.drawText(GLYPHS, i, i + 1, cells[i].left - cellLeft[i], -cellTop[i], paint);
+            cached = ImageCache.getInstance().put(key, cached);
+        }
+        bitmap = cached;
+    }
+
+    /**
+     * Draws the text centered on {@code x} in the color of {@code tint}, like
+     * {@link Canvas#drawText} with a centered paint would. Returns false without drawing
+     * anything if the text has glyphs outside the atlas.
+     */
+    boolean draw(Canvas canvas, char[] text, int length, float x, float y, Paint tint) {
+        if (length > MAX_LENGTH)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (GLYPHS.indexOf(text[i]) < 0)
+                return false;
+        }
+
+        paint.getTextWidths(text, 0, length, widths);
+        float penX = x - paint.measureText(text, 0, length) / 2;
+        int baseline = Math.round(y);
+        for (int i = 0; i < length; i++) {
+            int glyph = GLYPHS.indexOf(text[i]);
+            Rect cell = cells[glyph];
+            int left = Math.round(penX) + cellLeft[glyph];
+            int top = baseline + cellTop[glyph];
+            destination.set(left, top, left + cell.width(), top + cell.height());
+            canvas.drawBitmap(bitmap, cell, destination, tint);
+            penX += widths[i];
+        }
+        return true;
+    }
+
+    void release() {
+        ImageCache.getInstance().release(bitmap);
+    }
+}
@@ -0,0 +1,134 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process wide cache of decoded images and pre-rendered assets, so every engine showing the
+ * same thing (the live face, the picker and the config previews) shares one bitmap. Entries are
+ * reference counted; unreferenced ones stay cached until the cache grows past
+ * {@link #MAX_SIZE_BYTES} or memory gets trimmed, and are then handed to the
+ * {@link BitmapPool}. Cached bitmaps are shared and must never be drawn into.
+ */
+class ImageCache {
+
+    private static final int MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static final ImageCache INSTANCE = new ImageCache();
+
+    private static class Entry {
+        final String key;
+        final Bitmap bitmap;
+        int references;
+
+        Entry(String key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /* In least recently used order. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+    private final Map<Bitmap, Entry> entriesByBitmap = new IdentityHashMap<>();
+    private int sizeBytes;
+
+    static ImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    private ImageCache() {
+    }
+
+    /**
+     * The key of an icon drawn at the given size, or null if the icon can't be identified, like
+     * bitmap icons that come in a new parcel with every update.
+     */
+    static String getKey(Icon icon, int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
+            return null;
+        switch (icon.getType()) {
+            case Icon.TYPE_URI:
+                return "uri:" + icon.getUri() + "@" + width + "x" + height;
+            case Icon.TYPE_RESOURCE:
+                return "res:" + icon.getResPackage() + "/" + icon.getResId() + "@" + width + "x" + height;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the cached bitmap and takes a reference to it, or null if it isn't cached.
+     */
+    synchronized Bitmap acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        entry.references++;
+        return entry.bitmap;
+    }
+
+    /**
+     * Caches a bitmap and takes a reference to it. If another one was cached under the key in the
+     * meantime, that one is returned instead and the given bitmap is released.
+     */
+    synchronized Bitmap put(String key, Bitmap bitmap) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            BitmapPool.getInstance().release(bitmap);
+        } else {
+            entry = new Entry(key, bitmap);
+            entries.put(key, entry);
+            entriesByBitmap.put(bitmap, entry);
+            sizeBytes += bitmap.getAllocationByteCount();
+            evict(MAX_SIZE_BYTES);
+        }
+        entry.references++;
+        return entry.bitmap;
+    }
+
+    /**
+     * Drops a reference to a cached bitmap. Bitmaps that aren't cached go straight to the
+     * {@link BitmapPool}.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null)
+            return;
+        Entry entry = entriesByBitmap.get(bitmap);
+        if (entry == null) {
+            BitmapPool.getInstance().release(bitmap);
+            return;
+        }
+        entry.references--;
+        evict(MAX_SIZE_BYTES);
+    }
+
+    /**
+     * Frees unreferenced entries as asked by {@link ComponentCallbacks2#onTrimMemory}.
+     */
+    synchronized void trim(int level) {
+        evict(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ? 0 : MAX_SIZE_BYTES / 2);
+    }
+
+    /**
+     * Drops the least recently used unreferenced entries until the cache fits in the given size.
+     */
+    private void evict(int maxSizeBytes) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.references > 0)
+                continue;
+            iterator.remove();
+            entriesByBitmap.remove(entry.bitmap);
+            sizeBytes -= entry.bitmap.getAllocationByteCount();
+            BitmapPool.getInstance().release(entry.bitmap);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.support.wearable.complications.ComplicationText;
+import android.util.LruCache;
+
+/**
+ * Keeps a {@link ComplicationText} around so time dependent texts (countdowns, "time since",
+ * formatted times) can be evaluated again whenever they change, instead of once when the data
+ * arrives. The normalized result of each evaluated string is memoized.
+ */
+class LiveComplicationText {
+
+    private static final long SECOND_MS = 1000;
+    private static final long DAY_MS = 24 * 60 * 60 * SECOND_MS;
+
+    private static final int NORMALIZED_CACHE_SIZE = 16;
+
+    interface Normalizer {
+        String normalize(String text);
+    }
+
+    private final Context context;
+    private final Normalizer normalizer;
+    private final LruCache<String, String> normalized = new LruCache<>(NORMALIZED_CACHE_SIZE);
+
+    private ComplicationText text;
+    private boolean timeDependent;
+    private long evaluatedAt;
+    private String raw;
+    private String value = "";
+
+    LiveComplicationText(Context context, Normalizer normalizer) {
+        this.context = context.getApplicationContext();
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Replaces the text and evaluates it. Returns whether the normalized value changed.
+     */
+    boolean set(ComplicationText text, long now) {
+        this.text = text;
+        if (text == null) {
+            timeDependent = false;
+            raw = null;
+            return setValue("");
+        }
+
+        timeDependent = !text.returnsSameText(now, now + DAY_MS);
+        return evaluate(now);
+    }
+
+    /**
+     * Shows an already normalized value, e.g. from a snapshot, until the real text is set.
+     */
+    boolean restore(String value) {
+        text = null;
+        timeDependent = false;
+        raw = null;
+        return setValue(value);
+    }
+
+    /**
+     * Evaluates the text again if it could have changed since it was last evaluated. Returns
+     * whether the normalized value changed.
+     */
+    boolean update(long now) {
+        if (!timeDependent || text.returnsSameText(evaluatedAt, now))
+            return false;
+        return evaluate(now);
+    }
+
+    /**
+     * Returns the next instant within the coming minute at which the text changes, or
+     * {@link TickScheduler#NEVER}. Changes further away are caught by the minute tick.
+     */
+    long getNextChange(long now) {
+        if (!timeDependent)
+            return TickScheduler.NEVER;
+
+        long second = TickScheduler.nextSecond(now);
+        long minute = TickScheduler.nextMinute(now);
+        if (text.returnsSameText(now, minute))
+            return TickScheduler.NEVER;
+
+        /* Find the first second boundary that returns something else. */
+        long low = second;
+        long high = minute;
+        while (low < high) {
+            long middle = low + (high - low) / SECOND_MS / 2 * SECOND_MS;
+            if (text.returnsSameText(now, middle))
+                low = middle + SECOND_MS;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private boolean evaluate(long now) {
+        evaluatedAt = now;
+        String raw = text.getText(context, now).toString();
+        if (raw.equals(this.raw))
+            return false;
+        this.raw = raw;
+
+        String value = normalized.get(raw);
+        if (value == null) {
+            value = normalizer.normalize(raw);
+            normalized.put(raw, value);
+        }
+        return setValue(value);
+    }
+
+    private boolean setValue(String value) {
+        if (value.equals(this.value))
+            return false;
+        this.value = value;
+        return true;
+    }
+
+    /**
+     * Whether the text changes with time and has to be evaluated again.
+     */
+    boolean isTimeDependent() {
+        return timeDependent;
+    }
+
+    String get() {
+        return value;
+    }
+}
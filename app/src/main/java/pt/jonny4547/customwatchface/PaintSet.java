@@ -0,0 +1,111 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * The fully configured paints for one combination of ambient, mute and low bit mode at one
+ * surface size. Sets are built up front and switched by reference, their paints are never
+ * changed afterwards so their text measurement caches stay warm.
+ */
+class PaintSet {
+
+    static final float SECOND_STROKE_WIDTH = 20f;
+    private static final float TEXT_STROKE_WIDTH = 2f;
+    private static final float SMALL_TEXT_STROKE_WIDTH = 1f;
+
+    private static final int AMBIENT = 1;
+    private static final int MUTE = 2;
+    private static final int LOW_BIT = 4;
+    static final int COUNT = 8;
+
+    /* Same as the set's index, identifies the paints in caches. */
+    final int id;
+
+    final Paint text;
+    final Paint smallText;
+    final Paint second;
+    /* Pre-rendered digits in the style of the text paint, shared between sets. */
+    final GlyphAtlas glyphs;
+
+    static int index(boolean ambient, boolean muteMode, boolean lowBitAmbient) {
+        return (ambient ? AMBIENT : 0) | (muteMode ? MUTE : 0) | (lowBitAmbient ? LOW_BIT : 0);
+    }
+
+    /**
+     * Builds every set for a surface of the given height. The glyph atlases are only built if
+     * {@code withGlyphs} is set.
+     */
+    static PaintSet[] createAll(int height, boolean withGlyphs) {
+        GlyphAtlas interactiveGlyphs = null;
+        GlyphAtlas ambientGlyphs = null;
+        if (withGlyphs) {
+            interactiveGlyphs = new GlyphAtlas(createTextPaint(height, false, false), height + ":interactive");
+            ambientGlyphs = new GlyphAtlas(createTextPaint(height, true, false), height + ":ambient");
+        }
+
+        PaintSet[] sets = new PaintSet[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            boolean ambient = (i & AMBIENT) != 0;
+            sets[i] = new PaintSet(i, height, ambient, (i & MUTE) != 0, (i & LOW_BIT) != 0,
+                    ambient ? ambientGlyphs : interactiveGlyphs);
+        }
+        return sets;
+    }
+
+    /**
+     * Frees the glyph atlases shared by the given sets.
+     */
+    static void releaseAll(PaintSet[] sets) {
+        if (sets == null)
+            return;
+        for (boolean ambient : new boolean[] {false, true}) {
+            GlyphAtlas glyphs = sets[index(ambient, false, false)].glyphs;
+            if (glyphs != null)
+                glyphs.release();
+        }
+    }
+
+    private PaintSet(int id, int height, boolean ambient, boolean muteMode, boolean lowBitAmbient, GlyphAtlas glyphs) {
+        this.id = id;
+        boolean opaque = ambient && lowBitAmbient;
+
+        text = createTextPaint(height, ambient, opaque);
+
+        smallText = new Paint();
+        smallText.setColor(opaque ? 0xFFFFFFFF : 0x88FFFFFF);
+        smallText.setStrokeWidth(SMALL_TEXT_STROKE_WIDTH);
+        smallText.setAntiAlias(!ambient);
+        smallText.setStyle(ambient ? Paint.Style.STROKE : Paint.Style.FILL);
+        smallText.setStrokeCap(Paint.Cap.ROUND);
+        smallText.setTextAlign(Paint.Align.CENTER);
+        smallText.setTypeface(Typeface.DEFAULT_BOLD);
+        smallText.setLetterSpacing(0.025f);
+        smallText.setTextSize(height*.075f);
+
+        /* Dim display in mute mode. */
+        second = new Paint();
+        second.setStyle(Paint.Style.STROKE);
+        second.setColor(0x88FFFFFF);
+        if (muteMode)
+            second.setAlpha(80);
+        second.setStrokeWidth(SECOND_STROKE_WIDTH);
+        second.setAntiAlias(true);
+        second.setStrokeCap(Paint.Cap.ROUND);
+
+        this.glyphs = glyphs;
+    }
+
+    private static Paint createTextPaint(int height, boolean ambient, boolean opaque) {
+        Paint text = new Paint();
+        text.setColor(opaque ? 0xFFFFFFFF : 0xAAFFFFFF);
+        text.setStrokeWidth(TEXT_STROKE_WIDTH);
+        text.setAntiAlias(!ambient);
+        text.setStyle(ambient ? Paint.Style.STROKE : Paint.Style.FILL);
+        text.setStrokeCap(Paint.Cap.ROUND);
+        text.setTextAlign(Paint.Align.CENTER);
+        text.setTypeface(Typeface.DEFAULT_BOLD);
+        text.setTextSize(height*.25f);
+        return text;
+    }
+}
@@ -0,0 +1,145 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.wearable.complications.ComplicationProviderInfo;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Remembers which provider each complication slot was last seen with, along with a pre-scaled
+ * thumbnail of its icon, so the config screen can show the slots before the providers are
+ * queried. The support library doesn't expose the provider's component, so providers are told
+ * apart by name, app and type.
+ */
+class ProviderInfoCache {
+
+    private static final String TAG = "Provider Info Cache";
+
+    private static final String PREFERENCES_NAME = "provider_info";
+    private static final String THUMBNAIL_DIRECTORY = "provider_icons";
+    private static final int THUMBNAIL_SIZE_DP = 24;
+
+    interface Callback {
+        /**
+         * The slot's thumbnail changed, null if the slot is empty. Called on the main thread.
+         */
+        void onThumbnailChanged(int complicationId, Bitmap thumbnail);
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final int thumbnailSize;
+
+    ProviderInfoCache(Context context) {
+        this.context = context.getApplicationContext();
+        preferences = this.context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        thumbnailSize = Math.round(THUMBNAIL_SIZE_DP * context.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Whether anything is known about the slot.
+     */
+    boolean contains(int complicationId) {
+        return preferences.getBoolean(key(complicationId, "known"), false);
+    }
+
+    /**
+     * The slot's cached thumbnail, or null if it's empty or unknown. It's a small file, quick
+     * enough to read on the main thread.
+     */
+    Bitmap getThumbnail(int complicationId) {
+        if (!contains(complicationId))
+            return null;
+        File file = getThumbnailFile(complicationId);
+        return file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+    }
+
+    /**
+     * Records the slot's current provider. If it differs from the cached one, the thumbnail is
+     * rendered on the {@link BackgroundExecutor} and reported to the callback.
+     */
+    void update(final int complicationId, final ComplicationProviderInfo info, final Callback callback) {
+        final String provider = info == null ? null : info.providerName;
+        final String app = info == null ? null : info.appName;
+        final int type = info == null ? 0 : info.complicationType;
+        if (contains(complicationId)
+                && Objects.equals(provider, preferences.getString(key(complicationId, "provider"), null))
+                && Objects.equals(app, preferences.getString(key(complicationId, "app"), null))
+                && type == preferences.getInt(key(complicationId, "type"), 0))
+            return;
+
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap thumbnail = info == null || info.providerIcon == null
+                        ? null : renderThumbnail(info.providerIcon.loadDrawable(context));
+                /* Only remember the provider once its thumbnail is in place. */
+                if (writeThumbnail(complicationId, thumbnail))
+                    preferences.edit()
+                            .putBoolean(key(complicationId, "known"), true)
+                            .putString(key(complicationId, "provider"), provider)
+                            .putString(key(complicationId, "app"), app)
+                            .putInt(key(complicationId, "type"), type)
+                            .apply();
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onThumbnailChanged(complicationId, thumbnail);
+                    }
+                });
+            }
+        });
+    }
+
+    private Bitmap renderThumbnail(Drawable drawable) {
+        if (drawable == null)
+            return null;
+        Bitmap thumbnail = Bitmap.createBitmap(thumbnailSize, thumbnailSize, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, thumbnailSize, thumbnailSize);
+        drawable.draw(new Canvas(thumbnail));
+        return thumbnail;
+    }
+
+    private boolean writeThumbnail(int complicationId, Bitmap thumbnail) {
+        File file = getThumbnailFile(complicationId);
+        if (thumbnail == null)
+            return !file.exists() || file.delete();
+
+        file.getParentFile().mkdirs();
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream stream = null;
+        try {
+            stream = atomicFile.startWrite();
+            thumbnail.compress(Bitmap.CompressFormat.PNG, 100, stream);
+            atomicFile.finishWrite(stream);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the thumbnail of " + complicationId, e);
+            if (stream != null)
+                atomicFile.failWrite(stream);
+            return false;
+        }
+    }
+
+    private File getThumbnailFile(int complicationId) {
+        return new File(new File(context.getFilesDir(), THUMBNAIL_DIRECTORY), complicationId + ".png");
+    }
+
+    private static String key(int complicationId, String field) {
+        return complicationId + "." + field;
+    }
+}
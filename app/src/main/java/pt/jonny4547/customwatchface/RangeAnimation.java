@@ -0,0 +1,97 @@
+package pt.jonny4547.customwatchface;
+
+/**
+ * Eases the sweep of the range arc from its old value to a new one. The curve is a precomputed
+ * table and all state is primitive, so frequent updates don't allocate.
+ */
+class RangeAnimation {
+
+    static final long DURATION_MS = 400;
+    /* Frames are scheduled this far apart while the animation runs. */
+    private static final long FRAME_MS = 33;
+
+    /* Cubic ease out, sampled over the duration. */
+    private static final float[] EASING = new float[65];
+
+    static {
+        for (int i = 0; i < EASING.length; i++) {
+            float t = 1 - i / (float) (EASING.length - 1);
+            EASING[i] = 1 - t * t * t;
+        }
+    }
+
+    /* -1 when there's no arc. */
+    private float from = -1;
+    private float to = -1;
+    private float current = -1;
+    private long startMillis;
+    private boolean running;
+
+    /**
+     * Moves towards a new sweep, animated if {@code animate} and there's an arc on both sides.
+     * Returns whether the target changed.
+     */
+    boolean setTarget(float sweep, long now, boolean animate) {
+        if (sweep == to)
+            return false;
+
+        update(now);
+        from = current;
+        to = sweep;
+        startMillis = now;
+        running = animate && from >= 0 && to >= 0;
+        if (!running)
+            current = to;
+        return true;
+    }
+
+    /**
+     * Jumps to the end of a running animation.
+     */
+    void finish() {
+        running = false;
+        current = to;
+    }
+
+    /**
+     * Advances the animation to {@code now}.
+     */
+    void update(long now) {
+        if (!running)
+            return;
+
+        long elapsed = now - startMillis;
+        if (elapsed >= DURATION_MS || elapsed < 0) {
+            finish();
+            return;
+        }
+        float position = elapsed * (EASING.length - 1) / (float) DURATION_MS;
+        int index = (int) position;
+        float easing = EASING[index] + (EASING[index + 1] - EASING[index]) * (position - index);
+        current = from + (to - from) * easing;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The current sweep, or -1 if there's no arc.
+     */
+    float get() {
+        return current;
+    }
+
+    /**
+     * The sweep being animated to, or -1 if there's no arc.
+     */
+    float getTarget() {
+        return to;
+    }
+
+    long getNextChange(long now) {
+        if (!running)
+            return TickScheduler.NEVER;
+        return Math.min(now + FRAME_MS, startMillis + DURATION_MS);
+    }
+}
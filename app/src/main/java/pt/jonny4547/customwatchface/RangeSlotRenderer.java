@@ -0,0 +1,117 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Canvas;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+
+/**
+ * A ranged value as an arc along the edge of the face, easing to new values.
+ */
+class RangeSlotRenderer extends SlotRenderer {
+
+    private final ArcPaths arcPaths;
+    /* Direction the arc grows around, in degrees clockwise from 3 o'clock. */
+    private final float centerAngle;
+
+    private final RangeAnimation range = new RangeAnimation();
+    private final Path path = new Path();
+    private float pathSweep = -1;
+    /* Sweep on screen, -1 if there's no arc. */
+    private float drawnSweep = -1;
+
+    RangeSlotRenderer(ComplicationSlot slot, ArcPaths arcPaths) {
+        super(slot);
+        this.arcPaths = arcPaths;
+        centerAngle = (float) Math.toDegrees(Math.atan2(slot.bounds.centerY() - .5f, slot.bounds.centerX() - .5f));
+    }
+
+    @Override
+    boolean setData(ComplicationData data, long now, boolean animate) {
+        float sweep = -1;
+        if (data != null && data.getType() == ComplicationData.TYPE_RANGED_VALUE) {
+            float min = data.getMinValue();
+            float max = data.getMaxValue();
+            float value = data.getValue();
+            sweep = max > min ? 360 * Math.min(1, Math.max(0, (value - min) / (max - min))) : 0;
+        }
+        return range.setTarget(sweep, now, animate);
+    }
+
+    @Override
+    boolean isLive() {
+        return range.isRunning();
+    }
+
+    /**
+     * The arc moves into the layer once it settles, and out of it while it animates.
+     */
+    @Override
+    boolean update(long now) {
+        boolean wasRunning = range.isRunning();
+        range.update(now);
+        return wasRunning != range.isRunning();
+    }
+
+    @Override
+    long getNextChange(long now) {
+        return range.getNextChange(now);
+    }
+
+    @Override
+    boolean isAnimating() {
+        return range.isRunning();
+    }
+
+    @Override
+    void finishAnimation() {
+        range.finish();
+    }
+
+    @Override
+    void setSize(int width, int height, boolean round, PaintSet paints) {
+        pathSweep = -1;
+        drawnSweep = -1;
+    }
+
+    @Override
+    void draw(Canvas canvas, PaintSet paints) {
+        float sweep = range.get();
+        drawnSweep = sweep;
+        if (sweep < 0)
+            return;
+        /* Only rebuilt when the sweep changes. */
+        if (sweep != pathSweep) {
+            arcPaths.buildArc(path, centerAngle, sweep);
+            pathSweep = sweep;
+        }
+        canvas.drawPath(path, paints.second);
+    }
+
+    /**
+     * The arc grows or shrinks at both ends.
+     */
+    @Override
+    void getDirtyBounds(Rect out) {
+        float from = Math.max(0, drawnSweep);
+        float to = Math.max(0, range.get());
+        float min = Math.min(from, to);
+        float max = Math.max(from, to);
+        if (max <= min)
+            return;
+        float padding = PaintSet.SECOND_STROKE_WIDTH;
+        arcPaths.unionArcBounds(centerAngle - .5f * max, .5f * (max - min), padding, out);
+        arcPaths.unionArcBounds(centerAngle + .5f * min, .5f * (max - min), padding, out);
+    }
+
+    @Override
+    StateSnapshot.Slot save() {
+        float sweep = range.getTarget();
+        return new StateSnapshot.Slot(slot.id, slot.kind, "", "", sweep < 0 ? -1 : sweep / 360);
+    }
+
+    @Override
+    void restore(StateSnapshot.Slot snapshot) {
+        range.setTarget(snapshot.fraction < 0 ? -1 : snapshot.fraction * 360, 0, false);
+    }
+}
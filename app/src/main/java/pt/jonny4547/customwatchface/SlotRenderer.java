@@ -0,0 +1,91 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+
+/**
+ * Draws one complication slot and keeps its render state. Settled slots are drawn into the
+ * renderer's cached layer; slots that change every frame (animations) are drawn over it.
+ */
+abstract class SlotRenderer {
+
+    final ComplicationSlot slot;
+
+    /* Changed since it was last drawn, and in the renderer's dirty slots. */
+    boolean dirty;
+
+    SlotRenderer(ComplicationSlot slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * A renderer for the slot, or null if the slot isn't drawn by the renderer (the background).
+     */
+    static SlotRenderer create(ComplicationSlot slot, Context context, ArcPaths arcPaths, TextFitter textFitter) {
+        switch (slot.kind) {
+            case ComplicationSlot.KIND_RANGE:
+                return new RangeSlotRenderer(slot, arcPaths);
+            case ComplicationSlot.KIND_TEXT:
+                return new TextSlotRenderer(slot, context, textFitter);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns whether anything that's drawn changed.
+     */
+    abstract boolean setData(ComplicationData data, long now, boolean animate);
+
+    /**
+     * Whether the slot can change without new data, and so has to be updated every frame.
+     */
+    abstract boolean isLive();
+
+    /**
+     * Brings time dependent state up to {@code now}. Returns whether the slot has to be drawn
+     * into the cached layer again.
+     */
+    boolean update(long now) {
+        return false;
+    }
+
+    /**
+     * The next instant the slot changes without new data, or {@link TickScheduler#NEVER}.
+     */
+    long getNextChange(long now) {
+        return TickScheduler.NEVER;
+    }
+
+    /**
+     * Whether the slot is drawn over the cached layer, every frame, rather than into it.
+     */
+    boolean isAnimating() {
+        return false;
+    }
+
+    /**
+     * Jumps to the end of any animation.
+     */
+    void finishAnimation() {
+    }
+
+    void setSize(int width, int height, boolean round, PaintSet paints) {
+    }
+
+    abstract void draw(Canvas canvas, PaintSet paints);
+
+    /**
+     * Adds the area that changed since the slot was last drawn to {@code out}.
+     */
+    abstract void getDirtyBounds(Rect out);
+
+    /**
+     * The slot's state, to be saved in a snapshot.
+     */
+    abstract StateSnapshot.Slot save();
+
+    abstract void restore(StateSnapshot.Slot snapshot);
+}
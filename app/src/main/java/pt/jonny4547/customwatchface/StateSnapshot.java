@@ -0,0 +1,163 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The last complication state of the face, saved to app storage so a new engine can draw a
+ * complete first frame before the providers report again. The file is a small binary blob:
+ * a header, the kind, normalized texts and range fraction of each slot, and a downscaled RGB 565
+ * background.
+ */
+class StateSnapshot {
+
+    private static final String TAG = "State Snapshot";
+
+    private static final String FILE_NAME = "state_snapshot.bin";
+    private static final int MAGIC = 0x43574653;
+    private static final int VERSION = 3;
+
+    /* The background is only shown until the real one is decoded, it can be blurry. */
+    private static final int BACKGROUND_SIZE = 96;
+
+    /**
+     * The state of one complication slot. Slots only use the fields that apply to them.
+     */
+    static class Slot {
+        final int id;
+        /* The slot's kind when it was saved, see ComplicationSlot. */
+        final int kind;
+        final String title;
+        final String text;
+        /* Between 0 and 1, or -1 if there's no range. */
+        final float fraction;
+
+        Slot(int id, int kind, String title, String text, float fraction) {
+            this.id = id;
+            this.kind = kind;
+            this.title = title;
+            this.text = text;
+            this.fraction = fraction;
+        }
+    }
+
+    final Slot[] slots;
+    /* Downscaled, null if there's no background. */
+    final Bitmap background;
+
+    StateSnapshot(Slot[] slots, Bitmap background) {
+        this.slots = slots;
+        this.background = background;
+    }
+
+    /**
+     * Takes a snapshot of a background image, shrinking it to a size that's quick to save and
+     * load.
+     */
+    static Bitmap downscale(Bitmap image) {
+        if (image == null)
+            return null;
+        Bitmap scaled = Bitmap.createScaledBitmap(image, BACKGROUND_SIZE,
+                Math.max(1, BACKGROUND_SIZE * image.getHeight() / image.getWidth()), true);
+        Bitmap converted = scaled.copy(Bitmap.Config.RGB_565, false);
+        if (scaled != image)
+            scaled.recycle();
+        return converted;
+    }
+
+    /**
+     * Where the snapshot is saved, e.g. to watch it for changes.
+     */
+    static File getPath(Context context) {
+        return new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(getPath(context));
+    }
+
+    /**
+     * Reads the saved snapshot, or returns null if there's none or it can't be read.
+     */
+    static StateSnapshot read(Context context) {
+        try {
+            byte[] bytes = getFile(context).readFully();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            int count = in.readInt();
+            if (count < 0 || count > ComplicationSlot.getAll().length)
+                return null;
+            Slot[] slots = new Slot[count];
+            for (int i = 0; i < slots.length; i++)
+                slots[i] = new Slot(in.readInt(), in.readInt(), in.readUTF(), in.readUTF(), in.readFloat());
+
+            Bitmap background = null;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width > 0 && height > 0) {
+                int size = width * height * 2;
+                if (in.available() != size)
+                    return null;
+                background = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+                background.copyPixelsFromBuffer(ByteBuffer.wrap(bytes, bytes.length - size, size));
+            }
+            return new StateSnapshot(slots, background);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read the snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the saved snapshot. Does file I/O, so it shouldn't run on the main thread.
+     */
+    void write(Context context) {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slots.length);
+            for (Slot slot : slots) {
+                out.writeInt(slot.id);
+                out.writeInt(slot.kind);
+                out.writeUTF(slot.title);
+                out.writeUTF(slot.text);
+                out.writeFloat(slot.fraction);
+            }
+            if (background != null) {
+                out.writeInt(background.getWidth());
+                out.writeInt(background.getHeight());
+                ByteBuffer pixels = ByteBuffer.allocate(background.getByteCount());
+                background.copyPixelsToBuffer(pixels);
+                out.write(pixels.array());
+            } else {
+                out.writeInt(0);
+                out.writeInt(0);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the snapshot", e);
+            if (stream != null)
+                file.failWrite(stream);
+        }
+    }
+}
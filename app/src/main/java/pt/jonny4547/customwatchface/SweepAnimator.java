@@ -0,0 +1,152 @@
+package pt.jonny4547.customwatchface;
+
+import android.view.Choreographer;
+
+/**
+ * Drives the smooth seconds sweep from display frames. Starts at the display's refresh rate and
+ * steps down to 30 and then 15 fps while frames take longer than the budget to draw, giving up
+ * on the sweep and going back to 1 Hz ticks if even that's too much or the battery is low.
+ * Rates are stepped up again after a while well within budget. Tick frames are measured too, so
+ * a sweep that gave up comes back at the lowest rate once drawing gets cheap enough again.
+ */
+class SweepAnimator implements Choreographer.FrameCallback {
+
+    /* The sweep isn't animated, the seconds tick once a second. */
+    static final int RATE_TICK = 1;
+
+    private static final int[] FALLBACK_RATES = {30, 15};
+
+    /* Frames drawn at a rate before deciding whether to keep it. */
+    private static final int SETTLE_FRAMES = 30;
+    /* Frames under half the budget before trying the next rate up. */
+    private static final int RECOVER_FRAMES = 300;
+
+    interface Listener {
+        /**
+         * A sweep frame is due.
+         */
+        void onFrame();
+
+        /**
+         * The rate changed, in frames per second or {@link #RATE_TICK}.
+         */
+        void onRateChanged(int rate);
+    }
+
+    private final Listener listener;
+    private final long budgetNanos;
+    /* Frame rates to try, highest first. */
+    private final int[] rates;
+    private final long vsyncNanos;
+
+    private boolean running;
+    private boolean batteryLow;
+    /* Index into rates, or rates.length for RATE_TICK. */
+    private int level;
+
+    private long lastFrameNanos;
+    private long averageNanos;
+    private int framesAtLevel;
+    private int framesWithinBudget;
+
+    SweepAnimator(float refreshRate, long budgetMillis, Listener listener) {
+        this.listener = listener;
+        budgetNanos = budgetMillis * 1000000L;
+
+        int displayRate = Math.max(1, Math.round(refreshRate));
+        vsyncNanos = 1000000000L / displayRate;
+        int count = 1;
+        for (int rate : FALLBACK_RATES)
+            if (rate < displayRate)
+                count++;
+        rates = new int[count];
+        rates[0] = displayRate;
+        for (int i = 0, j = 1; i < FALLBACK_RATES.length; i++)
+            if (FALLBACK_RATES[i] < displayRate)
+                rates[j++] = FALLBACK_RATES[i];
+    }
+
+    /**
+     * Starts animating at the highest rate, unless already running.
+     */
+    void start() {
+        if (running)
+            return;
+        running = true;
+        setLevel(0);
+    }
+
+    void stop() {
+        if (!running)
+            return;
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        listener.onRateChanged(RATE_TICK);
+    }
+
+    void setBatteryLow(boolean batteryLow) {
+        if (this.batteryLow == batteryLow)
+            return;
+        this.batteryLow = batteryLow;
+        setLevel(level);
+    }
+
+    /**
+     * The current rate, in frames per second or {@link #RATE_TICK}.
+     */
+    int getRate() {
+        return batteryLow || level >= rates.length ? RATE_TICK : rates[level];
+    }
+
+    boolean isAnimating() {
+        return running && getRate() != RATE_TICK;
+    }
+
+    /**
+     * Reports how long a frame took to draw, a sweep frame or a tick.
+     */
+    void frameDrawn(long nanos) {
+        if (!running || batteryLow)
+            return;
+
+        averageNanos = averageNanos == 0 ? nanos : averageNanos + (nanos - averageNanos) / 8;
+        if (++framesAtLevel < SETTLE_FRAMES)
+            return;
+
+        if (averageNanos > budgetNanos && level < rates.length)
+            setLevel(level + 1);
+        else if (level > 0 && averageNanos < budgetNanos / 2) {
+            if (++framesWithinBudget >= RECOVER_FRAMES)
+                setLevel(level - 1);
+        } else
+            framesWithinBudget = 0;
+    }
+
+    private void setLevel(int level) {
+        this.level = level;
+        lastFrameNanos = 0;
+        averageNanos = 0;
+        framesAtLevel = 0;
+        framesWithinBudget = 0;
+
+        Choreographer choreographer = Choreographer.getInstance();
+        choreographer.removeFrameCallback(this);
+        if (isAnimating())
+            choreographer.postFrameCallback(this);
+        listener.onRateChanged(running ? getRate() : RATE_TICK);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isAnimating())
+            return;
+        Choreographer.getInstance().postFrameCallback(this);
+
+        /* Half a vsync of slack, so a rate matching the display doesn't skip frames. */
+        long interval = 1000000000L / getRate();
+        if (lastFrameNanos != 0 && frameTimeNanos - lastFrameNanos < interval - vsyncNanos / 2)
+            return;
+        lastFrameNanos = frameTimeNanos;
+        listener.onFrame();
+    }
+}
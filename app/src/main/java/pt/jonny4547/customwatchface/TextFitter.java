@@ -0,0 +1,75 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * Fits single line texts into a given width, first by shrinking them down to
+ * {@link #MIN_SCALE} of their size and then by ellipsizing them. Results are kept in a small
+ * LRU cache, so drawing a fitted text is a single {@link android.graphics.Canvas#drawText}.
+ */
+class TextFitter {
+
+    private static final float MIN_SCALE = .75f;
+    private static final int CACHE_SIZE = 16;
+
+    static class Fitted {
+        final String text;
+        final Paint paint;
+
+        private final String source;
+        private final Paint sourcePaint;
+        private final float maxWidth;
+
+        private Fitted(String text, Paint paint, String source, Paint sourcePaint, float maxWidth) {
+            this.text = text;
+            this.paint = paint;
+            this.source = source;
+            this.sourcePaint = sourcePaint;
+            this.maxWidth = maxWidth;
+        }
+
+        /**
+         * Whether this is the result of fitting the given text, so it can be reused without
+         * looking it up again.
+         */
+        boolean isFor(String source, Paint sourcePaint, float maxWidth) {
+            return this.sourcePaint == sourcePaint && this.maxWidth == maxWidth && this.source.equals(source);
+        }
+    }
+
+    private final LruCache<String, Fitted> cache = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * Fits the text drawn with the given paint into {@code maxWidth}. The paint is identified by
+     * {@code paintId} in the cache, so the same id must always mean the same paint.
+     */
+    Fitted fit(String text, Paint paint, int paintId, float maxWidth) {
+        String key = paintId + ":" + maxWidth + ":" + text;
+        Fitted fitted = cache.get(key);
+        if (fitted == null || fitted.sourcePaint != paint) {
+            fitted = measure(text, paint, maxWidth);
+            cache.put(key, fitted);
+        }
+        return fitted;
+    }
+
+    private static Fitted measure(String text, Paint paint, float maxWidth) {
+        float width = paint.measureText(text);
+        if (width <= maxWidth)
+            return new Fitted(text, paint, text, paint, maxWidth);
+
+        TextPaint shrunk = new TextPaint(paint);
+        shrunk.setTextSize(paint.getTextSize() * Math.max(MIN_SCALE, maxWidth / width));
+        String fitted = shrunk.measureText(text) <= maxWidth
+                ? text
+                : TextUtils.ellipsize(text, shrunk, maxWidth, TextUtils.TruncateAt.END).toString();
+        return new Fitted(fitted, shrunk, text, paint, maxWidth);
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+}
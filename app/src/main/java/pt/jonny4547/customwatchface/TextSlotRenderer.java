@@ -0,0 +1,148 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+
+/**
+ * A short or long text with its title, both fitted into the width available at their position.
+ */
+class TextSlotRenderer extends SlotRenderer {
+
+    private static final LiveComplicationText.Normalizer TEXT_NORMALIZER = new LiveComplicationText.Normalizer() {
+        @Override
+        public String normalize(String text) {
+            return text.trim();
+        }
+    };
+
+    /* Titles lose anything in trailing parentheses or after a trailing " - ". */
+    private static final LiveComplicationText.Normalizer TITLE_NORMALIZER = new LiveComplicationText.Normalizer() {
+        @Override
+        public String normalize(String title) {
+            title = title.trim();
+            if (title.contains("("))
+                title = title.substring(0, title.lastIndexOf('(')).trim();
+            if (title.contains(" - "))
+                title = title.substring(0, title.lastIndexOf('-')).trim();
+            return title;
+        }
+    };
+
+    private final LiveComplicationText title;
+    private final LiveComplicationText text;
+
+    private final TextFitter textFitter;
+    private float centerX;
+    private float titleY;
+    private float textY;
+    private float titleMaxWidth;
+    private float textMaxWidth;
+    private TextFitter.Fitted fittedTitle;
+    private TextFitter.Fitted fittedText;
+    /* Everything the title and text can cover. */
+    private final Rect textBounds = new Rect();
+
+    TextSlotRenderer(ComplicationSlot slot, Context context, TextFitter textFitter) {
+        super(slot);
+        this.textFitter = textFitter;
+        title = new LiveComplicationText(context, TITLE_NORMALIZER);
+        text = new LiveComplicationText(context, TEXT_NORMALIZER);
+    }
+
+    @Override
+    boolean setData(ComplicationData data, long now, boolean animate) {
+        boolean changed;
+        if (data == null || !(data.getType() == ComplicationData.TYPE_SHORT_TEXT || data.getType() == ComplicationData.TYPE_LONG_TEXT)) {
+            changed = text.set(null, now);
+            changed |= title.set(null, now);
+        } else {
+            boolean isShort = data.getType() == ComplicationData.TYPE_SHORT_TEXT;
+            changed = text.set(isShort ? data.getShortText() : data.getLongText(), now);
+            changed |= title.set(isShort ? data.getShortTitle() : data.getLongTitle(), now);
+        }
+        return changed;
+    }
+
+    @Override
+    boolean isLive() {
+        return title.isTimeDependent() || text.isTimeDependent();
+    }
+
+    /**
+     * Evaluates time dependent texts again.
+     */
+    @Override
+    boolean update(long now) {
+        boolean titleChanged = title.update(now);
+        return text.update(now) || titleChanged;
+    }
+
+    @Override
+    long getNextChange(long now) {
+        return Math.min(title.getNextChange(now), text.getNextChange(now));
+    }
+
+    @Override
+    void setSize(int width, int height, boolean round, PaintSet paints) {
+        centerX = width * slot.bounds.centerX();
+        titleY = height * slot.bounds.top;
+        textY = height * slot.bounds.bottom;
+
+        /* The edges of each text furthest from the center. */
+        titleMaxWidth = getAvailableWidth(width, round, titleY + paints.smallText.ascent() - height*.5f);
+        textMaxWidth = getAvailableWidth(width, round, textY + paints.smallText.descent() - height*.5f);
+        float boundsWidth = width * slot.bounds.width();
+        titleMaxWidth = Math.min(titleMaxWidth, boundsWidth);
+        textMaxWidth = Math.min(textMaxWidth, boundsWidth);
+
+        fittedTitle = null;
+        fittedText = null;
+
+        /* Fitted texts are never wider or taller than these, stroke included. */
+        float halfWidth = Math.max(titleMaxWidth, textMaxWidth) * .5f + 2;
+        textBounds.set((int) Math.floor(centerX - halfWidth), (int) Math.floor(titleY + paints.smallText.ascent()) - 2,
+                (int) Math.ceil(centerX + halfWidth), (int) Math.ceil(textY + paints.smallText.descent()) + 2);
+    }
+
+    /**
+     * The width inside the seconds arc at the given distance from the center.
+     */
+    private static float getAvailableWidth(int width, boolean round, float distance) {
+        float radius = width*.5f - PaintSet.SECOND_STROKE_WIDTH*1.5f;
+        if (!round)
+            return Math.max(0, 2 * radius);
+        return (float) (2 * Math.sqrt(Math.max(0, radius*radius - distance*distance)));
+    }
+
+    private TextFitter.Fitted fit(TextFitter.Fitted fitted, String value, PaintSet paints, float maxWidth) {
+        if (fitted != null && fitted.isFor(value, paints.smallText, maxWidth))
+            return fitted;
+        return textFitter.fit(value, paints.smallText, paints.id, maxWidth);
+    }
+
+    @Override
+    void draw(Canvas canvas, PaintSet paints) {
+        fittedTitle = fit(fittedTitle, title.get(), paints, titleMaxWidth);
+        fittedText = fit(fittedText, text.get(), paints, textMaxWidth);
+        canvas.drawText(fittedTitle.text, centerX, titleY, fittedTitle.paint);
+        canvas.drawText(fittedText.text, centerX, textY, fittedText.paint);
+    }
+
+    @Override
+    void getDirtyBounds(Rect out) {
+        out.union(textBounds);
+    }
+
+    @Override
+    StateSnapshot.Slot save() {
+        return new StateSnapshot.Slot(slot.id, slot.kind, title.get(), text.get(), -1);
+    }
+
+    @Override
+    void restore(StateSnapshot.Slot snapshot) {
+        title.restore(snapshot.title);
+        text.restore(snapshot.text);
+    }
+}
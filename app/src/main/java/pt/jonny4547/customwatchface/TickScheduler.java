@@ -0,0 +1,60 @@
+package pt.jonny4547.customwatchface;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out the next instant at which anything on the watch face changes, so the face only
+ * wakes up when there's something new to draw. The minute rollover is always a deadline, other
+ * changes are reported by {@link Source}s.
+ */
+class TickScheduler {
+
+    static final long NEVER = Long.MAX_VALUE;
+
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+
+    interface Source {
+        /**
+         * Returns the first instant after {@code now} at which this source changes what's drawn,
+         * or {@link #NEVER}.
+         */
+        long getNextChange(long now);
+    }
+
+    private final Clock clock;
+    private final List<Source> sources = new ArrayList<>();
+
+    TickScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    void addSource(Source source) {
+        sources.add(source);
+    }
+
+    long getNextDeadline(long now) {
+        long deadline = nextMinute(now);
+        for (int i = 0; i < sources.size(); i++)
+            deadline = Math.min(deadline, sources.get(i).getNextChange(now));
+        return deadline;
+    }
+
+    /**
+     * Milliseconds from now until the next deadline.
+     */
+    long getDelay() {
+        long now = clock.millis();
+        return Math.max(0, getNextDeadline(now) - now);
+    }
+
+    static long nextSecond(long now) {
+        return (Math.floorDiv(now, SECOND_MS) + 1) * SECOND_MS;
+    }
+
+    static long nextMinute(long now) {
+        return (Math.floorDiv(now, MINUTE_MS) + 1) * MINUTE_MS;
+    }
+}
@@ -0,0 +1,222 @@
+package pt.jonny4547.customwatchface;
+
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * The formatted time without its AM/PM marker, kept in a reusable char buffer that is only
+ * rebuilt when the minute or the format changes.
+ * <p>
+ * Patterns made of hours, minutes and literals, which covers the short time format of every
+ * common locale, are compiled once and filled in without allocating. Anything else falls back
+ * to {@link DateFormat#format}.
+ */
+class TimeText {
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+
+    /* Token kinds, the low 16 bits hold the minimum width or the literal char. */
+    private static final int LITERAL = 1 << 16;
+    private static final int HOUR_0_23 = 2 << 16;
+    private static final int HOUR_1_24 = 3 << 16;
+    private static final int HOUR_0_11 = 4 << 16;
+    private static final int HOUR_1_12 = 5 << 16;
+    private static final int MINUTE = 6 << 16;
+    private static final int KIND_MASK = 0xFFFF0000;
+    private static final int VALUE_MASK = 0xFFFF;
+
+    private final Date date = new Date();
+    private DateFormat format;
+
+    /* The compiled pattern, or null to fall back to the format. */
+    private int[] tokens;
+    private char zeroDigit;
+
+    private char[] chars = new char[8];
+    private int length;
+    private long minute = Long.MIN_VALUE;
+
+    TimeText(DateFormat format) {
+        setFormat(format);
+    }
+
+    void setFormat(DateFormat format) {
+        this.format = format;
+        tokens = compile(format);
+        minute = Long.MIN_VALUE;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        format.setTimeZone(timeZone);
+        minute = Long.MIN_VALUE;
+    }
+
+    /**
+     * Makes sure the buffer holds the given time. Only rebuilds it when the minute changed
+     * since the last call, and only allocates if the pattern couldn't be compiled.
+     */
+    void update(WatchTime time) {
+        long minute = time.getMinute();
+        if (minute == this.minute)
+            return;
+        this.minute = minute;
+
+        if (tokens != null)
+            fill(time.getLocalMillis());
+        else
+            format(time.getMillis());
+    }
+
+    private void fill(long localMillis) {
+        int hour = (int) Math.floorMod(Math.floorDiv(localMillis, HOUR_MS), 24L);
+        int minute = (int) Math.floorMod(Math.floorDiv(localMillis, MINUTE_MS), 60L);
+
+        int length = 0;
+        for (int token : tokens) {
+            int value = token & VALUE_MASK;
+            switch (token & KIND_MASK) {
+                case LITERAL:
+                    length = ensureCapacity(length, 1);
+                    chars[length++] = (char) value;
+                    continue;
+                case HOUR_0_23:
+                    length = appendNumber(length, hour, value);
+                    break;
+                case HOUR_1_24:
+                    length = appendNumber(length, hour == 0 ? 24 : hour, value);
+                    break;
+                case HOUR_0_11:
+                    length = appendNumber(length, hour % 12, value);
+                    break;
+                case HOUR_1_12:
+                    length = appendNumber(length, hour % 12 == 0 ? 12 : hour % 12, value);
+                    break;
+                case MINUTE:
+                    length = appendNumber(length, minute, value);
+                    break;
+            }
+        }
+        this.length = length;
+    }
+
+    private int appendNumber(int length, int number, int width) {
+        int digits = number >= 10 ? 2 : 1;
+        length = ensureCapacity(length, Math.max(digits, width));
+        for (int i = digits; i < width; i++)
+            chars[length++] = zeroDigit;
+        if (digits == 2)
+            chars[length++] = (char) (zeroDigit + number / 10);
+        chars[length++] = (char) (zeroDigit + number % 10);
+        return length;
+    }
+
+    private int ensureCapacity(int length, int extra) {
+        if (length + extra > chars.length) {
+            char[] chars = new char[length + extra];
+            System.arraycopy(this.chars, 0, chars, 0, length);
+            this.chars = chars;
+        }
+        return length;
+    }
+
+    private void format(long millis) {
+        date.setTime(millis);
+        String time = format.format(date);
+
+        /* Drop everything from the first space on, i.e. the AM/PM marker. */
+        int length = 0;
+        while (length < time.length() && !isSpace(time.charAt(length)))
+            length++;
+
+        ensureCapacity(0, length);
+        time.getChars(0, length, chars, 0);
+        this.length = length;
+    }
+
+    /**
+     * Compiles the part of the pattern before the first space, or returns null if it has
+     * anything but hours, minutes and literals.
+     */
+    private int[] compile(DateFormat format) {
+        if (!(format instanceof SimpleDateFormat))
+            return null;
+        NumberFormat numberFormat = format.getNumberFormat();
+        if (!(numberFormat instanceof DecimalFormat))
+            return null;
+        zeroDigit = ((DecimalFormat) numberFormat).getDecimalFormatSymbols().getZeroDigit();
+
+        String pattern = ((SimpleDateFormat) format).toPattern();
+        int[] tokens = new int[pattern.length()];
+        int count = 0;
+        boolean quoted = false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (isSpace(c))
+                break;
+
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    tokens[count++] = LITERAL | c;
+                    i++;
+                } else
+                    quoted = !quoted;
+                continue;
+            }
+
+            if (quoted || !(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                tokens[count++] = LITERAL | c;
+                continue;
+            }
+
+            int width = 1;
+            while (i + 1 < pattern.length() && pattern.charAt(i + 1) == c) {
+                width++;
+                i++;
+            }
+            if (width > 2)
+                return null;
+
+            switch (c) {
+                case 'H':
+                    tokens[count++] = HOUR_0_23 | width;
+                    break;
+                case 'k':
+                    tokens[count++] = HOUR_1_24 | width;
+                    break;
+                case 'K':
+                    tokens[count++] = HOUR_0_11 | width;
+                    break;
+                case 'h':
+                    tokens[count++] = HOUR_1_12 | width;
+                    break;
+                case 'm':
+                    tokens[count++] = MINUTE | width;
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        int[] compiled = new int[count];
+        System.arraycopy(tokens, 0, compiled, 0, count);
+        return compiled;
+    }
+
+    private static boolean isSpace(char c) {
+        return Character.isSpaceChar(c) || Character.isWhitespace(c);
+    }
+
+    char[] getChars() {
+        return chars;
+    }
+
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,163 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.time.Clock;
+import java.util.TimeZone;
+
+/**
+ * Renders the watch face with the last saved {@link StateSnapshot} into a bitmap, on the
+ * {@link BackgroundExecutor}. The engine saves a new snapshot when its complications change, and
+ * right away when a provider changes, so watching the snapshot file keeps the preview up to date
+ * as providers are chosen. Slots whose provider changed after the snapshot was saved are drawn
+ * empty rather than with the old provider's values, in case the engine never saves one.
+ */
+class WatchFacePreview {
+
+    interface Callback {
+        /**
+         * A new preview is ready. Called on the main thread.
+         */
+        void onPreviewRendered(Bitmap preview);
+    }
+
+    private final Context context;
+    private final int width;
+    private final int height;
+    private final boolean round;
+    private final Callback callback;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FileObserver observer;
+
+    /* Only touched on the background executor. */
+    private WatchFaceRenderer renderer;
+
+    private final Runnable render = new Runnable() {
+        @Override
+        public void run() {
+            if (!started)
+                return;
+            final Bitmap preview = render();
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (started)
+                        callback.onPreviewRendered(preview);
+                }
+            });
+        }
+    };
+
+    /* Set on the main thread, read by renders in flight. */
+    private volatile boolean started;
+
+    /* When a provider was last chosen for each slot, by slot id. Guarded by itself. */
+    private final long[] providerChangeMillis = new long[ComplicationSlot.getAll().length];
+
+    @SuppressWarnings("deprecation")
+    WatchFacePreview(Context context, int width, int height, boolean round, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.width = width;
+        this.height = height;
+        this.round = round;
+        this.callback = callback;
+
+        final String snapshotName = StateSnapshot.getPath(this.context).getName();
+        observer = new FileObserver(StateSnapshot.getPath(this.context).getParent(),
+                FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (snapshotName.equals(path))
+                    BackgroundExecutor.get().execute(render);
+            }
+        };
+    }
+
+    /**
+     * Renders the preview and keeps rendering it again whenever the snapshot changes.
+     */
+    void start() {
+        if (started)
+            return;
+        started = true;
+        observer.startWatching();
+        BackgroundExecutor.get().execute(render);
+    }
+
+    /**
+     * Renders the preview again, if it's started.
+     */
+    void refresh() {
+        if (started)
+            BackgroundExecutor.get().execute(render);
+    }
+
+    /**
+     * A provider was chosen for the slot. It's drawn empty until the engine saves a snapshot with
+     * the new provider's data.
+     */
+    void providerChanged(int slotId) {
+        if (ComplicationSlot.get(slotId) == null)
+            return;
+        synchronized (providerChangeMillis) {
+            providerChangeMillis[slotId] = System.currentTimeMillis();
+        }
+        refresh();
+    }
+
+    /**
+     * Stops rendering and frees the renderer. Renders still in flight are dropped.
+     */
+    void stop() {
+        if (!started)
+            return;
+        started = false;
+        observer.stopWatching();
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (renderer != null) {
+                    renderer.release();
+                    renderer = null;
+                }
+            }
+        });
+    }
+
+    private Bitmap render() {
+        if (renderer == null) {
+            renderer = new WatchFaceRenderer(context,
+                    android.text.format.DateFormat.getTimeFormat(context), new FrameStats());
+            renderer.setSurfaceSize(width, height);
+            renderer.setRound(round);
+        }
+
+        /* 0 if there's no snapshot yet. */
+        long savedMillis = StateSnapshot.getPath(context).lastModified();
+        StateSnapshot snapshot = StateSnapshot.read(context);
+        if (snapshot != null) {
+            renderer.restore(snapshot);
+            renderer.setBackgroundImage(snapshot.background == null ? null : BackgroundImageLoader.render(
+                    new BitmapDrawable(context.getResources(), snapshot.background), width, height));
+        }
+
+        WatchTime time = new WatchTime(Clock.systemUTC(), TimeZone.getDefault());
+        time.update();
+        synchronized (providerChangeMillis) {
+            for (int id = 0; id < providerChangeMillis.length; id++) {
+                if (providerChangeMillis[id] > savedMillis)
+                    renderer.setComplicationData(id, null, time.getMillis());
+            }
+        }
+        renderer.finishAnimations();
+        Bitmap preview = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        renderer.draw(new Canvas(preview), time);
+        return preview;
+    }
+}
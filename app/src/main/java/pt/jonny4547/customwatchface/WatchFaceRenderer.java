@@ -0,0 +1,498 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.*;
+import android.support.wearable.complications.ComplicationData;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Draws the watch face into any {@link Canvas}, independently of the engine driving it. Holds
+ * everything that's drawn and the caches needed to draw it quickly.
+ */
+class WatchFaceRenderer {
+
+    private final FrameStats frameStats;
+
+    private boolean muteMode;
+    private boolean ambient;
+    private boolean lowBitAmbient;
+
+    private boolean secondMode = false;
+    /* Minute the seconds arc was last drawn in, the arc changes direction every minute. */
+    private long secondModeMinute = -1;
+    private boolean smoothSeconds;
+
+    private boolean round = true;
+    private int width;
+    private int height;
+    private float centerX;
+    private float centerY;
+
+    /* By slot id, null for slots that aren't drawn here. */
+    private final SlotRenderer[] slots;
+    /* Slots that can change without new data, the only ones looked at every frame. */
+    private final List<SlotRenderer> liveSlots = new ArrayList<>();
+    /* Slots changed since the last frame, the only others looked at for partial redraws. */
+    private final List<SlotRenderer> dirtySlots = new ArrayList<>();
+
+    /* Complication texts fitted into the width available at their position. */
+    private final TextFitter textFitter = new TextFitter();
+
+    private PaintSet[] paintSets;
+    private PaintSet paints;
+
+    private final ArcPaths arcPaths;
+
+    private final TimeText timeText;
+
+    private Bitmap backgroundImage;
+    /* The background downscaled for the snapshot, once per image rather than on every save. */
+    private Bitmap snapshotBackground;
+
+    /* Everything but the seconds arc, rebuilt only when its contents change. */
+    private Bitmap staticLayer;
+    private Canvas staticLayerCanvas;
+    private boolean staticLayerDirty = true;
+
+    /* Whether the next frame has to repaint the whole surface, see getDirtyRect. */
+    private boolean fullRedraw = true;
+    /* Sweep of the seconds arc on screen, -1 if it isn't drawn. */
+    private float drawnSecondsSweep = -1;
+    private long staticLayerMinute = -1;
+
+    private final AmbientFrame ambientFrame = new AmbientFrame();
+
+    WatchFaceRenderer(Context context, DateFormat timeFormat, FrameStats frameStats) {
+        this.frameStats = frameStats;
+
+        arcPaths = new ArcPaths();
+        ComplicationSlot[] definitions = ComplicationSlot.getAll();
+        slots = new SlotRenderer[definitions.length];
+        for (int i = 0; i < definitions.length; i++)
+            slots[i] = SlotRenderer.create(definitions[i], context, arcPaths, textFitter);
+
+        timeText = new TimeText(timeFormat);
+
+        paintSets = PaintSet.createAll(0, false);
+        updatePaints();
+    }
+
+    void setSurfaceSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        centerX = width / 2f;
+        centerY = height / 2f;
+
+        PaintSet.releaseAll(paintSets);
+        paintSets = PaintSet.createAll(height, true);
+        updatePaints();
+
+        arcPaths.setSize(width, height, PaintSet.SECOND_STROKE_WIDTH*.5f);
+
+        updateSlotSizes();
+
+        /* Decoded for another size, it's dropped until it's loaded again at this one. */
+        if (backgroundImage != null && (backgroundImage.getWidth() != width || backgroundImage.getHeight() != height)) {
+            ImageCache.getInstance().release(backgroundImage);
+            backgroundImage = null;
+        }
+
+        BitmapPool.getInstance().release(staticLayer);
+        staticLayer = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+        staticLayerCanvas = new Canvas(staticLayer);
+        setFullyDirty();
+
+        ambientFrame.setSize(width, height);
+    }
+
+    /**
+     * Whether the display is round, which limits the width available for text away from the
+     * center.
+     */
+    void setRound(boolean round) {
+        if (this.round == round)
+            return;
+        this.round = round;
+        updateSlotSizes();
+        setFullyDirty();
+    }
+
+    private void updateSlotSizes() {
+        textFitter.clear();
+        PaintSet interactive = paintSets[PaintSet.index(false, false, false)];
+        for (SlotRenderer slot : slots) {
+            if (slot != null)
+                slot.setSize(width, height, round, interactive);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Frees the bitmaps held by the renderer. It can't draw until the surface size is set again.
+     */
+    void release() {
+        ImageCache.getInstance().release(backgroundImage);
+        backgroundImage = null;
+        BitmapPool.getInstance().release(staticLayer);
+        staticLayer = null;
+        staticLayerCanvas = null;
+        ambientFrame.release();
+        PaintSet.releaseAll(paintSets);
+        paintSets = PaintSet.createAll(0, false);
+        updatePaints();
+    }
+
+    void setAmbient(boolean ambient) {
+        this.ambient = ambient;
+        finishAnimations();
+        updatePaints();
+        setFullyDirty();
+    }
+
+    /**
+     * Jumps to the end of every animation, e.g. for a frame that's drawn only once.
+     */
+    void finishAnimations() {
+        for (SlotRenderer slot : slots) {
+            if (slot != null)
+                slot.finishAnimation();
+        }
+    }
+
+    /**
+     * Low bit displays can only show a few colors in ambient mode, so everything is drawn
+     * opaque and without anti-aliasing.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        this.lowBitAmbient = lowBitAmbient;
+        updatePaints();
+        invalidate();
+    }
+
+    void setBurnInProtection(boolean burnInProtection) {
+        ambientFrame.setBurnInProtection(burnInProtection);
+    }
+
+    private void updatePaints() {
+        paints = paintSets[PaintSet.index(ambient, muteMode, lowBitAmbient)];
+    }
+
+    /**
+     * Dims the display in mute mode. Returns whether the mode changed.
+     */
+    boolean setMuteMode(boolean muteMode) {
+        if (this.muteMode == muteMode)
+            return false;
+
+        this.muteMode = muteMode;
+        updatePaints();
+        setFullyDirty();
+        return true;
+    }
+
+    /**
+     * Whether the seconds arc follows the fraction of the second rather than whole seconds.
+     */
+    void setSmoothSeconds(boolean smoothSeconds) {
+        if (this.smoothSeconds == smoothSeconds)
+            return;
+        this.smoothSeconds = smoothSeconds;
+        fullRedraw = true;
+    }
+
+    void setTimeFormat(DateFormat timeFormat) {
+        timeText.setFormat(timeFormat);
+        invalidate();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        timeText.setTimeZone(timeZone);
+        invalidate();
+    }
+
+    /**
+     * Forces the cached frames to be drawn again on the next frame.
+     */
+    void invalidate() {
+        setFullyDirty();
+        ambientFrame.invalidate();
+    }
+
+    Bitmap getBackgroundImage() {
+        return backgroundImage;
+    }
+
+    /**
+     * Takes over the image, which may be shared through the {@link ImageCache}.
+     */
+    void setBackgroundImage(Bitmap image) {
+        ImageCache.getInstance().release(backgroundImage);
+        backgroundImage = image;
+        /* Not recycled, a snapshot still being written may use the old one. */
+        snapshotBackground = StateSnapshot.downscale(image);
+        setFullyDirty();
+    }
+
+    /**
+     * Sets the data of a slot drawn by the renderer. Returns whether anything that's drawn
+     * changed.
+     */
+    boolean setComplicationData(int slotId, ComplicationData data, long millis) {
+        SlotRenderer slot = slotId >= 0 && slotId < slots.length ? slots[slotId] : null;
+        if (slot == null)
+            return false;
+
+        /* Nothing is animated in ambient mode, the slots aren't drawn. */
+        boolean changed = slot.setData(data, millis, !ambient);
+        /* New data can turn time dependent while it still shows the same thing. */
+        updateLiveSlots();
+        if (!changed)
+            return false;
+
+        markDirty(slot);
+        return true;
+    }
+
+    private void updateLiveSlots() {
+        liveSlots.clear();
+        for (SlotRenderer slot : slots) {
+            if (slot != null && slot.isLive())
+                liveSlots.add(slot);
+        }
+    }
+
+    /**
+     * Whether any slot is animating, drawing a frame every {@link TickScheduler} deadline.
+     */
+    boolean isAnimating() {
+        for (int i = 0; i < liveSlots.size(); i++) {
+            if (liveSlots.get(i).isAnimating())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The complication state, to be saved in a snapshot.
+     */
+    StateSnapshot getSnapshot() {
+        List<StateSnapshot.Slot> saved = new ArrayList<>();
+        for (SlotRenderer slot : slots) {
+            if (slot != null)
+                saved.add(slot.save());
+        }
+        return new StateSnapshot(saved.toArray(new StateSnapshot.Slot[0]), snapshotBackground);
+    }
+
+    /**
+     * Shows the complication state of a snapshot until the providers report again. The background
+     * is set separately once it's scaled to the surface. Slots that no longer exist or changed
+     * kind are ignored.
+     */
+    void restore(StateSnapshot snapshot) {
+        for (StateSnapshot.Slot saved : snapshot.slots) {
+            ComplicationSlot definition = ComplicationSlot.get(saved.id);
+            SlotRenderer slot = definition == null || definition.kind != saved.kind ? null : slots[saved.id];
+            if (slot != null)
+                slot.restore(saved);
+        }
+        updateLiveSlots();
+        snapshotBackground = snapshot.background;
+        setFullyDirty();
+    }
+
+    private void setFullyDirty() {
+        staticLayerDirty = true;
+        fullRedraw = true;
+    }
+
+    /**
+     * Returns the next instant at which a slot changes without new data: a time dependent
+     * text within the coming minute, or the next animation frame.
+     */
+    long getNextSlotChange(long now) {
+        long next = TickScheduler.NEVER;
+        for (int i = 0; i < liveSlots.size(); i++)
+            next = Math.min(next, liveSlots.get(i).getNextChange(now));
+        return next;
+    }
+
+    /**
+     * The seconds arc is hidden in ambient and mute mode, so the face only has to wake up
+     * once a minute.
+     */
+    boolean shouldDrawSeconds() {
+        return !ambient && !muteMode;
+    }
+
+    /**
+     * Brings time dependent texts and animations up to the given time. Idle slots aren't looked
+     * at.
+     */
+    private void update(WatchTime time) {
+        for (int i = 0; i < liveSlots.size(); i++) {
+            SlotRenderer slot = liveSlots.get(i);
+            if (slot.update(time.getMillis()))
+                markDirty(slot);
+        }
+    }
+
+    private void markDirty(SlotRenderer slot) {
+        staticLayerDirty = true;
+        if (slot.dirty)
+            return;
+        slot.dirty = true;
+        dirtySlots.add(slot);
+    }
+
+    /**
+     * Works out the part of the surface that drawing the given time changes, which is all that
+     * has to be repainted. Returns false if that's the whole surface: in ambient mode, on a new
+     * minute, and when anything but the complications and arcs changed.
+     */
+    boolean getDirtyRect(WatchTime time, Rect out) {
+        update(time);
+        out.setEmpty();
+        if (fullRedraw || staticLayer == null || ambient || time.getMinute() != staticLayerMinute
+                || shouldDrawSeconds() != (drawnSecondsSweep >= 0))
+            return false;
+
+        for (int i = 0; i < dirtySlots.size(); i++)
+            dirtySlots.get(i).getDirtyBounds(out);
+        for (int i = 0; i < liveSlots.size(); i++) {
+            SlotRenderer slot = liveSlots.get(i);
+            if (slot.isAnimating())
+                slot.getDirtyBounds(out);
+        }
+
+        /* The seconds arc grows or shrinks at both ends. */
+        if (shouldDrawSeconds()) {
+            float sweep = getSecondsSweep(time);
+            float min = Math.min(sweep, drawnSecondsSweep);
+            float max = Math.max(sweep, drawnSecondsSweep);
+            if (max > min) {
+                float padding = PaintSet.SECOND_STROKE_WIDTH;
+                arcPaths.unionArcBounds(-.5f * max, .5f * (max - min), padding, out);
+                arcPaths.unionArcBounds(.5f * min, .5f * (max - min), padding, out);
+            }
+        }
+        return true;
+    }
+
+    void draw(Canvas canvas, WatchTime time) {
+        update(time);
+        drawFrame(canvas, time);
+
+        fullRedraw = false;
+        for (int i = 0; i < dirtySlots.size(); i++)
+            dirtySlots.get(i).dirty = false;
+        dirtySlots.clear();
+        if (!shouldDrawSeconds() || ambient || staticLayer == null)
+            drawnSecondsSweep = -1;
+    }
+
+    private void drawFrame(Canvas canvas, WatchTime time) {
+        if (staticLayer == null) {
+            drawBackground(canvas);
+            drawWatchFace(canvas, time);
+            drawAnimatingSlots(canvas);
+            if (shouldDrawSeconds())
+                drawSeconds(canvas, time);
+            return;
+        }
+
+        long minute = time.getMinute();
+        if (ambient && ambientFrame.isReady()) {
+            Canvas ambientCanvas = ambientFrame.begin(minute);
+            if (ambientCanvas != null)
+                drawWatchFace(ambientCanvas, time);
+            ambientFrame.draw(canvas);
+            return;
+        }
+
+        if (staticLayerDirty || minute != staticLayerMinute) {
+            staticLayer.eraseColor(Color.BLACK);
+            drawBackground(staticLayerCanvas);
+            drawWatchFace(staticLayerCanvas, time);
+            staticLayerDirty = false;
+            staticLayerMinute = minute;
+        }
+
+        canvas.drawBitmap(staticLayer, 0, 0, null);
+        drawAnimatingSlots(canvas);
+        if (shouldDrawSeconds())
+            drawSeconds(canvas, time);
+    }
+
+    private void drawBackground(Canvas canvas) {
+        frameStats.begin(FrameStats.STAGE_BACKGROUND);
+        if (ambient || backgroundImage == null)
+            canvas.drawColor(Color.BLACK);
+        else {
+            canvas.drawBitmap(backgroundImage, 0, 0, null);
+            canvas.drawColor(0xAA000000);
+        }
+        frameStats.end(FrameStats.STAGE_BACKGROUND);
+    }
+
+    private void drawWatchFace(Canvas canvas, WatchTime time) {
+        frameStats.begin(FrameStats.STAGE_WATCH_FACE);
+        final float centerY = this.centerY + canvas.getHeight()*.10f;
+        timeText.update(time);
+        if (paints.glyphs == null || !paints.glyphs.draw(canvas, timeText.getChars(), timeText.getLength(), centerX, centerY, paints.text))
+            canvas.drawText(timeText.getChars(), 0, timeText.getLength(), centerX, centerY, paints.text);
+
+        if (!ambient) {
+            /* Animating slots are drawn over the layer instead. */
+            for (SlotRenderer slot : slots) {
+                if (slot != null && !slot.isAnimating())
+                    slot.draw(canvas, paints);
+            }
+        } else {
+            canvas.drawCircle(centerX, this.centerY, canvas.getWidth()*.5f-20f, paints.smallText);
+        }
+        frameStats.end(FrameStats.STAGE_WATCH_FACE);
+    }
+
+    private void drawAnimatingSlots(Canvas canvas) {
+        for (int i = 0; i < liveSlots.size(); i++) {
+            SlotRenderer slot = liveSlots.get(i);
+            if (slot.isAnimating())
+                slot.draw(canvas, paints);
+        }
+    }
+
+    /**
+     * The sweep of the seconds arc at the given time, in degrees.
+     */
+    private float getSecondsSweep(WatchTime time) {
+        float seconds = smoothSeconds ? time.getSeconds() : time.getSecond();
+        return (secondMode ? 60 - seconds : seconds) * ArcPaths.DEGREES_PER_SECOND;
+    }
+
+    private void drawSeconds(Canvas canvas, WatchTime time) {
+        long minute = time.getMinute();
+        if (minute != secondModeMinute) {
+            if (secondModeMinute != -1)
+                secondMode = !secondMode;
+            secondModeMinute = minute;
+        }
+
+        if (smoothSeconds)
+            canvas.drawPath(arcPaths.getSecondsPath(time.getSeconds(), secondMode), paints.second);
+        else
+            canvas.drawPath(arcPaths.getSecondsPath(time.getSecond(), secondMode), paints.second);
+        drawnSecondsSweep = getSecondsSweep(time);
+    }
+}
@@ -0,0 +1,100 @@
+package pt.jonny4547.customwatchface;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.TimeZone;
+
+/**
+ * The current time of the watch face, read from a {@link Clock} so it can be driven by a fake
+ * one. Local time is plain epoch arithmetic with a cached zone offset, which is only looked up
+ * again when the time zone changes or a transition (e.g. DST) is crossed.
+ */
+class WatchTime {
+
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+
+    private final Clock clock;
+    private ZoneRules rules;
+
+    private long offsetMs;
+    /* The offset is valid in [offsetValidFromMs, offsetValidUntilMs). */
+    private long offsetValidFromMs;
+    private long offsetValidUntilMs;
+
+    private long millis;
+    private long localMillis;
+
+    WatchTime(Clock clock, TimeZone timeZone) {
+        this.clock = clock;
+        setTimeZone(timeZone);
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        rules = timeZone.toZoneId().getRules();
+        offsetValidFromMs = Long.MAX_VALUE;
+        offsetValidUntilMs = Long.MIN_VALUE;
+    }
+
+    /**
+     * Reads the current time from the clock.
+     */
+    void update() {
+        setMillis(clock.millis());
+    }
+
+    /**
+     * Returns the current time of the clock without changing the time that's being shown.
+     */
+    long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    private void setMillis(long millis) {
+        this.millis = millis;
+        if (millis < offsetValidFromMs || millis >= offsetValidUntilMs)
+            updateOffset();
+        localMillis = millis + offsetMs;
+    }
+
+    private void updateOffset() {
+        Instant instant = Instant.ofEpochMilli(millis);
+        offsetMs = rules.getOffset(instant).getTotalSeconds() * SECOND_MS;
+
+        ZoneOffsetTransition previous = rules.previousTransition(instant);
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        offsetValidFromMs = previous == null ? Long.MIN_VALUE : Math.min(millis, previous.toEpochSecond() * SECOND_MS);
+        offsetValidUntilMs = next == null ? Long.MAX_VALUE : next.toEpochSecond() * SECOND_MS;
+    }
+
+    long getMillis() {
+        return millis;
+    }
+
+    long getLocalMillis() {
+        return localMillis;
+    }
+
+    /**
+     * The second of the minute, 0 to 59.
+     */
+    int getSecond() {
+        return (int) Math.floorMod(Math.floorDiv(localMillis, SECOND_MS), 60L);
+    }
+
+    /**
+     * Seconds into the minute, including the fraction of the current second.
+     */
+    float getSeconds() {
+        return Math.floorMod(localMillis, MINUTE_MS) / (float) SECOND_MS;
+    }
+
+    /**
+     * Minutes since the epoch in local time, i.e. a key that changes every minute.
+     */
+    long getMinute() {
+        return Math.floorDiv(localMillis, MINUTE_MS);
+    }
+}
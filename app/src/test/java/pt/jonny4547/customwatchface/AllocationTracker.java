@@ -0,0 +1,145 @@
+package pt.jonny4547.customwatchface;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records where the watch face allocates on the calling thread while tracking, using the
+ * allocation instrumenter agent {@link FrameAllocationTest} runs with. An allocation is the
+ * face's if it's made by the face's own code, or by the JDK on its behalf. Under Robolectric the
+ * Android framework is Robolectric's implementation rather than the device's, shadows and the
+ * dispatch to them included, so anything allocated below a framework call is left out, as is
+ * loading and linking classes, which only happens once.
+ */
+class AllocationTracker implements Sampler {
+
+    private static final String APP_PACKAGE = "pt.jonny4547.customwatchface.";
+    private static final String[] FRAMEWORK_PACKAGES = {
+            "android.", "com.android.", "dalvik.", "libcore.", "org.robolectric."
+    };
+    private static final String INSTRUMENTER_PACKAGE = "com.google.monitoring.";
+
+    /* Test classes in the app package, whose allocations aren't the face's. */
+    private static final String[] HARNESS_CLASSES = {
+            AllocationTracker.class.getName(), RenderFixture.class.getName(), FrameAllocationTest.class.getName()
+    };
+
+    /* App frames shown per allocation site. */
+    private static final int SITE_FRAMES = 12;
+
+    private final Thread thread = Thread.currentThread();
+    private volatile boolean tracking;
+
+    /* Allocation counts by site, a description and the stack of the app frames leading to it. */
+    private final Map<String, Integer> sites = new LinkedHashMap<>();
+    private int count;
+
+    AllocationTracker() {
+        AllocationRecorder.addSampler(this);
+    }
+
+    void release() {
+        tracking = false;
+        AllocationRecorder.removeSampler(this);
+    }
+
+    void start() {
+        tracking = true;
+    }
+
+    void stop() {
+        tracking = false;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * The allocation sites in the order they were first seen, with how often each allocated.
+     */
+    String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Integer> site : sites.entrySet())
+            report.append(site.getValue()).append(" x ").append(site.getKey()).append('\n');
+        return report.toString();
+    }
+
+    @Override
+    public void sampleAllocation(int count, String desc, Object newObj, long size) {
+        if (!tracking || Thread.currentThread() != thread)
+            return;
+
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        int allocatingFrame = findAllocatingFrame(stack);
+        int appFrame = findAppFrame(stack, allocatingFrame);
+        if (appFrame < 0)
+            return;
+
+        StringBuilder site = new StringBuilder(desc);
+        if (count >= 0)
+            site.append('[').append(count).append(']');
+        for (int i = appFrame; i < stack.length && i < appFrame + SITE_FRAMES; i++) {
+            if (!stack[i].getClassName().startsWith(APP_PACKAGE) || isHarness(stack[i].getClassName()))
+                break;
+            site.append("\n    at ").append(stack[i]);
+        }
+        /* Allocated in the JDK on the face's behalf. */
+        if (appFrame > allocatingFrame)
+            site.append("\n    in ").append(stack[allocatingFrame]);
+
+        String key = site.toString();
+        Integer seen = sites.get(key);
+        sites.put(key, seen == null ? 1 : seen + 1);
+        this.count++;
+    }
+
+    /**
+     * Index of the frame that allocated, past this sampler and the instrumenter calling it.
+     */
+    private static int findAllocatingFrame(StackTraceElement[] stack) {
+        int i = 0;
+        while (i < stack.length && (stack[i].getClassName().equals(AllocationTracker.class.getName())
+                || stack[i].getClassName().startsWith(INSTRUMENTER_PACKAGE)))
+            i++;
+        return i;
+    }
+
+    /**
+     * Index of the frame of the face that caused the allocation, or -1 if it isn't the face's.
+     */
+    private static int findAppFrame(StackTraceElement[] stack, int allocatingFrame) {
+        for (int i = allocatingFrame; i < stack.length; i++) {
+            String className = stack[i].getClassName();
+            if (isFramework(className) || isClassLoading(stack[i]))
+                return -1;
+            if (className.startsWith(APP_PACKAGE))
+                return isHarness(className) ? -1 : i;
+        }
+        return -1;
+    }
+
+    private static boolean isFramework(String className) {
+        for (String framework : FRAMEWORK_PACKAGES) {
+            if (className.startsWith(framework))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isClassLoading(StackTraceElement frame) {
+        return frame.getClassName().equals("java.lang.ClassLoader") && frame.getMethodName().equals("loadClass")
+                || frame.getClassName().equals("java.lang.invoke.MethodHandleNatives");
+    }
+
+    private static boolean isHarness(String className) {
+        for (String harness : HARNESS_CLASSES) {
+            if (className.equals(harness) || className.startsWith(harness + "$"))
+                return true;
+        }
+        return false;
+    }
+}
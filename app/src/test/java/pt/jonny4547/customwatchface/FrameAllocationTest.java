@@ -0,0 +1,98 @@
+package pt.jonny4547.customwatchface;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Drives the engine's frame path through an hour of simulated time in interactive and ambient
+ * mode, crossing minute rollovers, and fails if any frame after warm up allocates. Prints the
+ * allocations per frame, and failures list each allocation site with the stack that led to it.
+ */
+@RunWith(FrameAllocationTest.Runner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 31)
+public class FrameAllocationTest {
+
+    private static final int SIZE = 454;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long WARMUP_MS = 2 * MINUTE_MS;
+    private static final long DURATION_MS = 60 * MINUTE_MS;
+
+    /**
+     * Leaves the allocation instrumenter's classes to the system class loader, so the face's
+     * allocations are reported to the samplers the test adds.
+     */
+    public static class Runner extends RobolectricTestRunner {
+        public Runner(Class<?> testClass) throws InitializationError {
+            super(testClass);
+        }
+
+        @Override
+        protected InstrumentationConfiguration createClassLoaderConfig(FrameworkMethod method) {
+            return new InstrumentationConfiguration.Builder(super.createClassLoaderConfig(method))
+                    .doNotAcquirePackage("com.google.monitoring")
+                    .build();
+        }
+    }
+
+    private RenderFixture face;
+    /* Created on the thread that runs the test, it only records that one. */
+    private AllocationTracker tracker;
+
+    @After
+    public void tearDown() {
+        if (tracker != null)
+            tracker.release();
+        if (face != null)
+            face.release();
+    }
+
+    @Test
+    public void interactiveFramesDoNotAllocate() {
+        run("interactive", false);
+    }
+
+    @Test
+    public void ambientFramesDoNotAllocate() {
+        run("ambient", true);
+    }
+
+    private void run(String name, boolean ambient) {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, ambient);
+        tracker = new AllocationTracker();
+
+        runFrames(WARMUP_MS);
+        tracker.start();
+        int frames = runFrames(DURATION_MS);
+        tracker.stop();
+
+        System.out.println(String.format(Locale.ROOT, "%s: %.2f allocations/frame over %d frames",
+                name, tracker.getCount() / (double) frames, frames));
+        assertEquals("Allocations in " + name + " frames:\n" + tracker.getReport(), 0, tracker.getCount());
+    }
+
+    /**
+     * Draws the frames of the given stretch of time, returns how many.
+     */
+    private int runFrames(long durationMs) {
+        long end = face.clock.millis() + durationMs;
+        int frames = 0;
+        while (face.clock.millis() < end) {
+            face.nextFrame();
+            frames++;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,251 @@
+package pt.jonny4547.customwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * A watch face drawn offscreen through the engine's {@link FrameDriver}, with synthetic
+ * complication data in every slot and a background loaded by the {@link BackgroundImageLoader},
+ * in UTC on a simulated clock. Frames are drawn the way the engine draws them: a tick at every
+ * {@link TickScheduler} deadline in interactive mode, the system's time tick every minute in
+ * ambient mode.
+ */
+class RenderFixture {
+
+    /* 2021-06-15 10:08:30 UTC, reference frames are drawn at this time. */
+    static final long START_MILLIS = 1623751710000L;
+
+    static final TimeZone TIME_ZONE = TimeZone.getTimeZone("UTC");
+
+    private static final int SQUARE_SIZE = 320;
+
+    final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+    final WatchTime time = new WatchTime(clock, TIME_ZONE);
+    final FrameStats stats = new FrameStats();
+    final WatchFaceRenderer renderer;
+    final Bitmap frame;
+    final FrameDriver driver;
+
+    private final boolean ambient;
+    private final Canvas canvas;
+    private final Rect bounds;
+    private boolean invalidated;
+
+    /**
+     * A face for a surface of the given size, round unless it's the square size.
+     */
+    RenderFixture(Context context, int size, boolean ambient) {
+        this.ambient = ambient;
+
+        DateFormat timeFormat = new SimpleDateFormat("H:mm", Locale.ROOT);
+        timeFormat.setTimeZone(TIME_ZONE);
+        renderer = new WatchFaceRenderer(context, timeFormat, stats);
+        renderer.setSurfaceSize(size, size);
+        renderer.setRound(size != SQUARE_SIZE);
+        renderer.setAmbient(ambient);
+        feedComplications();
+        loadBackground(context, size);
+
+        frame = BitmapPool.getInstance().acquire(size, size, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(frame);
+        bounds = new Rect(0, 0, size, size);
+
+        SweepAnimator sweepAnimator = new SweepAnimator(60, 8, new SweepAnimator.Listener() {
+            @Override
+            public void onFrame() {
+            }
+
+            @Override
+            public void onRateChanged(int rate) {
+            }
+        });
+        driver = new FrameDriver(clock, time, renderer, sweepAnimator, stats, new FrameDriver.Surface() {
+            @Override
+            public boolean isVisible() {
+                return true;
+            }
+
+            @Override
+            public Canvas lockCanvas(Rect dirty) {
+                canvas.save();
+                canvas.clipRect(dirty);
+                return canvas;
+            }
+
+            @Override
+            public void unlockCanvasAndPost(Canvas canvas) {
+                canvas.restore();
+            }
+
+            @Override
+            public void invalidate() {
+                invalidated = true;
+            }
+        });
+
+        /* The face becoming visible. */
+        driver.invalidate(FrameStats.INVALIDATE_VISIBILITY);
+        drawRequestedFrame();
+    }
+
+    void release() {
+        renderer.release();
+        BitmapPool.getInstance().release(frame);
+    }
+
+    /**
+     * Moves on to the next frame and draws it.
+     */
+    void nextFrame() {
+        if (ambient) {
+            clock.set(TickScheduler.nextMinute(clock.millis()));
+            driver.invalidate(FrameStats.INVALIDATE_TIME_TICK);
+            drawRequestedFrame();
+        } else {
+            driver.tickDue();
+            driver.invalidate(FrameStats.INVALIDATE_TICK);
+            drawRequestedFrame();
+            clock.advance(driver.scheduleNextTick());
+        }
+    }
+
+    /**
+     * Draws all of the surface at the given time.
+     */
+    void drawFrame(long millis) {
+        clock.set(millis);
+        renderer.invalidate();
+        driver.draw(canvas, bounds);
+    }
+
+    /* The full frames the framework would ask for with onDraw. */
+    private void drawRequestedFrame() {
+        if (!invalidated)
+            return;
+        invalidated = false;
+        driver.draw(canvas, bounds);
+    }
+
+    private void feedComplications() {
+        ComplicationData text = new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                .setShortTitle(ComplicationText.plainText("Heart rate (bpm)"))
+                .setShortText(ComplicationText.plainText("72"))
+                .build();
+
+        ComplicationData range = new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
+                .setMinValue(0)
+                .setMaxValue(10000)
+                .setValue(6500)
+                .setShortText(ComplicationText.plainText("6500"))
+                .build();
+
+        for (ComplicationSlot slot : ComplicationSlot.getAll()) {
+            if (slot.kind == ComplicationSlot.KIND_TEXT)
+                renderer.setComplicationData(slot.id, text, clock.millis());
+            else if (slot.kind == ComplicationSlot.KIND_RANGE)
+                renderer.setComplicationData(slot.id, range, clock.millis());
+        }
+        /* Reference frames show the settled range, not its first animation frame. */
+        renderer.finishAnimations();
+    }
+
+    /**
+     * Loads the background the way the engine does and waits for it to be delivered.
+     */
+    private void loadBackground(Context context, int size) {
+        ComplicationData background = new ComplicationData.Builder(ComplicationData.TYPE_LARGE_IMAGE)
+                .setLargeImage(Icon.createWithBitmap(createBackground()))
+                .build();
+
+        BackgroundImageLoader loader = new BackgroundImageLoader(context, new Handler(Looper.getMainLooper()),
+                new BackgroundImageLoader.Callback() {
+                    @Override
+                    public void onImageLoaded(Bitmap image) {
+                        renderer.setBackgroundImage(image);
+                    }
+                });
+        loader.load(background.getLargeImage(), size, size);
+
+        /* The executor runs one task at a time, the load is done once this one ran. */
+        try {
+            BackgroundExecutor.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new AssertionError("Failed to load the background", e);
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /* A landscape gradient, so the aspect ratio handling is exercised too. */
+    private static Bitmap createBackground() {
+        Bitmap bitmap = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, 640, 480, 0xFF3366CC, 0xFFCC6633, Shader.TileMode.CLAMP));
+        new Canvas(bitmap).drawPaint(paint);
+        return bitmap;
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    static class SimulatedClock extends Clock {
+        private long millis;
+
+        SimulatedClock(long millis) {
+            this.millis = millis;
+        }
+
+        void set(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long millis) {
+            this.millis += millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package pt.jonny4547.customwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Renders the watch face offscreen through the engine's frame path at a few surface sizes, in
+ * interactive and ambient mode, driven by a simulated clock. Prints the time per frame, and
+ * compares a reference frame of each run against the golden images in
+ * {@code src/test/resources/golden}. Allocations per frame are checked by
+ * {@link FrameAllocationTest}, timings here are taken without the allocation agent.
+ * <p>
+ * After an intended visual change, record the golden images again with
+ * {@code ./gradlew testDebugUnitTest -PrecordGoldens} and check them in.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 31)
+public class RenderGoldenTest {
+
+    private static final int WARMUP_FRAMES = 120;
+    private static final int FRAMES = 600;
+
+    /* Anti-aliasing differences within this many levels per channel are ignored. */
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final double MAX_DIFFERENT_PIXELS = .001;
+
+    private RenderFixture face;
+
+    @After
+    public void tearDown() {
+        if (face != null)
+            face.release();
+    }
+
+    @Test
+    public void round390Interactive() {
+        run("round_390_interactive", 390, false);
+    }
+
+    @Test
+    public void round390Ambient() {
+        run("round_390_ambient", 390, true);
+    }
+
+    @Test
+    public void round454Interactive() {
+        run("round_454_interactive", 454, false);
+    }
+
+    @Test
+    public void round454Ambient() {
+        run("round_454_ambient", 454, true);
+    }
+
+    @Test
+    public void square320Interactive() {
+        run("square_320_interactive", 320, false);
+    }
+
+    @Test
+    public void square320Ambient() {
+        run("square_320_ambient", 320, true);
+    }
+
+    private void run(String name, int size, boolean ambient) {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), size, ambient);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            face.nextFrame();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++)
+            face.nextFrame();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format(Locale.ROOT, "%s: %dns/frame", name, elapsed / FRAMES));
+
+        face.drawFrame(RenderFixture.START_MILLIS);
+        compareGolden(name, face.frame);
+    }
+
+    private static void compareGolden(String name, Bitmap frame) {
+        if (Boolean.getBoolean("golden.record")) {
+            File golden = new File(System.getProperty("golden.dir"), name + ".png");
+            assertTrue("Failed to record " + golden, write(frame, golden));
+            return;
+        }
+
+        Bitmap expected;
+        try (InputStream in = RenderGoldenTest.class.getResourceAsStream("/golden/" + name + ".png")) {
+            if (in == null)
+                fail("No golden image for " + name + ", record it with -PrecordGoldens");
+            expected = BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            throw new AssertionError("Failed to read the golden image for " + name, e);
+        }
+        assertNotNull("Unreadable golden image for " + name, expected);
+        assertEquals(name + " width", expected.getWidth(), frame.getWidth());
+        assertEquals(name + " height", expected.getHeight(), frame.getHeight());
+
+        int pixelCount = frame.getWidth() * frame.getHeight();
+        int[] expectedPixels = new int[pixelCount];
+        int[] actualPixels = new int[pixelCount];
+        expected.getPixels(expectedPixels, 0, expected.getWidth(), 0, 0, expected.getWidth(), expected.getHeight());
+        frame.getPixels(actualPixels, 0, frame.getWidth(), 0, 0, frame.getWidth(), frame.getHeight());
+        expected.recycle();
+
+        int different = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            if (!similar(expectedPixels[i], actualPixels[i]))
+                different++;
+        }
+
+        if (different <= pixelCount * MAX_DIFFERENT_PIXELS)
+            return;
+
+        File actual = new File(System.getProperty("golden.output"), name + ".actual.png");
+        write(frame, actual);
+        fail(String.format(Locale.ROOT, "%s: %d pixels differ from the golden image, see %s",
+                name, different, actual));
+    }
+
+    private static boolean similar(int expected, int actual) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (Math.abs(((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF)) > CHANNEL_TOLERANCE)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean write(Bitmap bitmap, File file) {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            return false;
+        try (OutputStream out = new FileOutputStream(file)) {
+            return bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package pt.jonny4547.customwatchface;
+
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks when the engine's frame path schedules the next tick, on a simulated clock starting at
+ * {@link RenderFixture#START_MILLIS}, 30 s into a minute.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 31)
+public class TickSchedulerTest {
+
+    private static final int SIZE = 390;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private RenderFixture face;
+
+    @After
+    public void tearDown() {
+        if (face != null)
+            face.release();
+    }
+
+    @Test
+    public void secondsShownTickAtTheNextWholeSecond() {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, false);
+
+        face.clock.set(RenderFixture.START_MILLIS + 250);
+        assertEquals(750, face.driver.scheduleNextTick());
+        face.clock.set(RenderFixture.START_MILLIS + 999);
+        assertEquals(1, face.driver.scheduleNextTick());
+    }
+
+    @Test
+    public void ambientTicksAtTheNextMinute() {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, true);
+
+        assertEquals(30000, face.driver.scheduleNextTick());
+    }
+
+    @Test
+    public void muteModeTicksAtTheNextMinute() {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, false);
+        face.renderer.setMuteMode(true);
+
+        assertEquals(30000, face.driver.scheduleNextTick());
+    }
+
+    @Test
+    public void rangeAnimationTicksEveryFrameUntilItSettles() {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, false);
+        ComplicationData range = new ComplicationData.Builder(ComplicationData.TYPE_RANGED_VALUE)
+                .setMinValue(0)
+                .setMaxValue(10000)
+                .setValue(2000)
+                .build();
+        assertTrue(face.renderer.setComplicationData(getSlotId(ComplicationSlot.KIND_RANGE), range, face.clock.millis()));
+
+        /* 33 ms frames, the last one when the animation ends 400 ms in. */
+        long[] expected = {33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 4};
+        for (long delay : expected) {
+            face.driver.invalidate(FrameStats.INVALIDATE_TICK);
+            assertEquals(delay, face.driver.scheduleNextTick());
+            face.clock.advance(delay);
+        }
+
+        /* Settled, back to the seconds. */
+        face.driver.invalidate(FrameStats.INVALIDATE_TICK);
+        assertEquals(600, face.driver.scheduleNextTick());
+    }
+
+    @Test
+    public void timeDependentTextTicksAtItsChange() {
+        face = new RenderFixture(RuntimeEnvironment.getApplication(), SIZE, false);
+        face.renderer.setMuteMode(true);
+        /* Shows 1:59 until two hours have passed, 20.5 s from now. */
+        ComplicationData text = new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                .setShortText(new ComplicationText.TimeDifferenceBuilder()
+                        .setReferencePeriodEnd(RenderFixture.START_MILLIS - 2 * HOUR_MS + 20500)
+                        .setStyle(ComplicationText.DIFFERENCE_STYLE_STOPWATCH)
+                        .build())
+                .build();
+        face.renderer.setComplicationData(getSlotId(ComplicationSlot.KIND_TEXT), text, face.clock.millis());
+
+        /* The first whole second showing the new text, before the minute. */
+        assertEquals(21000, face.driver.scheduleNextTick());
+    }
+
+    private static int getSlotId(int kind) {
+        for (ComplicationSlot slot : ComplicationSlot.getAll()) {
+            if (slot.kind == kind)
+                return slot.id;
+        }
+        throw new AssertionError("No slot of kind " + kind);
+    }
+}